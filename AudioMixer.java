@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.*;
+
+// Software mixer that owns one SourceDataLine. Sound effects are decoded up
+// front into 16-bit mono PCM; play() only enqueues a trigger, and the mixer
+// thread sums the active voices into small chunks so overlapping effects no
+// longer cut each other off and no Clip call ever runs on the game loop.
+class AudioMixer {
+    static final float SAMPLE_RATE = 44100f;
+    static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    static final int DEFAULT_LATENCY_MS = 20;
+
+    private static final int MAX_SOUNDS = 16;
+    private static final int VOICES = 8;
+    private static final int QUEUE_SIZE = 64; // Power of two
+    private static final int GAIN_STEPS = 1024; // Fixed-point gain, 1.0 = GAIN_STEPS
+
+    private final SourceDataLine line;
+    private final int chunkFrames;
+    private final short[][] sounds = new short[MAX_SOUNDS][];
+
+    // Triggers from any thread: (sound + 1) << 16 | gain, 0 marks an empty slot
+    private final AtomicIntegerArray queue = new AtomicIntegerArray(QUEUE_SIZE);
+    private final AtomicLong queueTail = new AtomicLong();
+    private volatile long queueHead;
+
+    // Voice pool, owned by the mixer thread
+    private final short[][] voiceSound = new short[VOICES][];
+    private final int[] voicePosition = new int[VOICES];
+    private final int[] voiceGain = new int[VOICES];
+
+    private final int[] mix;
+    private final byte[] out;
+
+    private AudioMixer(SourceDataLine line, int chunkFrames) {
+        this.line = line;
+        this.chunkFrames = chunkFrames;
+        mix = new int[chunkFrames];
+        out = new byte[chunkFrames * 2];
+    }
+
+    // Opens the output line with roughly latencyMs of buffering and starts the
+    // mixer thread; returns null when no audio device is available
+    static AudioMixer open(int latencyMs) {
+        int bufferFrames = Math.max(64, (int) (SAMPLE_RATE * latencyMs / 1000));
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, bufferFrames * 2);
+            // Write half a buffer at a time so one chunk plays while the next is mixed
+            AudioMixer mixer = new AudioMixer(line, Math.max(32, line.getBufferSize() / 4));
+            line.start();
+
+            Thread thread = new Thread(mixer::mixLoop, "audio-mixer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+            return mixer;
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("Audio output unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Registers decoded PCM under a sound id; call before play()
+    void load(int sound, short[] pcm) {
+        sounds[sound] = pcm;
+    }
+
+    // Lock-free trigger; drops the sound if the queue is full
+    void play(int sound, float gain) {
+        int code = (sound + 1) << 16 | Math.min(0xFFFF, Math.round(gain * GAIN_STEPS));
+        long tail;
+        do {
+            tail = queueTail.get();
+            if (tail - queueHead >= QUEUE_SIZE) return;
+        } while (!queueTail.compareAndSet(tail, tail + 1));
+        queue.lazySet((int) tail & (QUEUE_SIZE - 1), code);
+    }
+
+    private void mixLoop() {
+        while (true) {
+            startQueuedVoices();
+
+            Arrays.fill(mix, 0);
+            for (int v = 0; v < VOICES; v++) {
+                short[] pcm = voiceSound[v];
+                if (pcm == null) continue;
+                int position = voicePosition[v];
+                int gain = voiceGain[v];
+                int frames = Math.min(chunkFrames, pcm.length - position);
+                for (int i = 0; i < frames; i++) {
+                    mix[i] += pcm[position + i] * gain / GAIN_STEPS;
+                }
+                position += frames;
+                if (position >= pcm.length) {
+                    voiceSound[v] = null;
+                } else {
+                    voicePosition[v] = position;
+                }
+            }
+
+            for (int i = 0; i < chunkFrames; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+                out[2 * i] = (byte) sample;
+                out[2 * i + 1] = (byte) (sample >> 8);
+            }
+            // Blocks until the line has room, which paces this thread
+            line.write(out, 0, out.length);
+        }
+    }
+
+    private void startQueuedVoices() {
+        long head = queueHead;
+        int code;
+        while ((code = queue.get((int) head & (QUEUE_SIZE - 1))) != 0) {
+            queue.set((int) head & (QUEUE_SIZE - 1), 0);
+            queueHead = ++head;
+
+            int voice = freeVoice();
+            voiceSound[voice] = sounds[(code >>> 16) - 1];
+            voicePosition[voice] = 0;
+            voiceGain[voice] = code & 0xFFFF;
+        }
+    }
+
+    // An idle voice, or the one furthest through its sound when all are busy
+    private int freeVoice() {
+        int oldest = 0;
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceSound[v] == null) return v;
+            if (voicePosition[v] > voicePosition[oldest]) oldest = v;
+        }
+        return oldest;
+    }
+
+    // Decodes a sound file into mixer-format PCM, or null if it cannot be read
+    static short[] decode(File file) {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(file);
+             AudioInputStream pcm = AudioSystem.getAudioInputStream(FORMAT, source)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = pcm.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            byte[] data = bytes.toByteArray();
+            short[] samples = new short[data.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) ((data[2 * i] & 0xFF) | data[2 * i + 1] << 8);
+            }
+            return samples;
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            System.err.println("Error loading sound file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Sine tone used when a sound file is missing or unreadable
+    static short[] tone(int frequency, int duration, float volume) {
+        short[] samples = new short[(int) (SAMPLE_RATE * duration / 1000)];
+        for (int i = 0; i < samples.length; i++) {
+            double angle = i / (SAMPLE_RATE / frequency) * 2.0 * Math.PI;
+            samples[i] = (short) (Math.sin(angle) * Short.MAX_VALUE * volume);
+        }
+        return samples;
+    }
+}
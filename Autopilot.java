@@ -0,0 +1,179 @@
+// Flies the bird from the solver's tables. The tables only look one pipe
+// ahead, so a bird can come out of a gap at a height it cannot climb or fall
+// from to the next one in time. Once per pipe the autopilot therefore plans
+// flaps through the current pipe with exact physics, from the simulation's
+// real position and velocity, looking for a run that leaves in a state the
+// table can get through the following pipe from, and then flies that plan
+// tick by tick. Coasting is tried before flapping at every step and states
+// the table rules out are never expanded, so the first path tried usually
+// works. If the bird leaves the plan, say from a flap of the player's own,
+// it plans again; if no plan is found it settles for the table's verdict on
+// the current pipe, and failing that for the middle of its gap.
+class Autopilot implements Bot {
+    private static final int MAX_PLAN = 256; // Ticks; more than the slowest pipe takes from spawning to being passed
+    private static final int SEARCH_NODES = 100_000;
+    private static final int MEMO_SIZE = 1 << 14; // Power of two
+    private static final int MEMO_PROBES = 8;
+
+    private final ReachabilitySolver solver;
+
+    // The plan being flown: flap or not per tick, and the state each tick should leave
+    private final boolean[] plan = new boolean[MAX_PLAN];
+    private final double[] planY = new double[MAX_PLAN];
+    private final double[] planVelocity = new double[MAX_PLAN];
+    private int planLength;
+    private int planNext;
+    private long planTick; // Simulation tick of the plan's first step
+
+    // (dx, row, k) states the current search failed from, tagged with the search they belong to
+    private final long[] failed = new long[MEMO_SIZE];
+    private final int[] failedSearch = new int[MEMO_SIZE];
+    private int search;
+    private int nodes;
+
+    // The pipes of the current search
+    private boolean hardMode;
+    private int score;
+    private int gapTop;
+    private int nextGapTop;
+    private int nextOffset; // Pixels from the current pipe to the next
+
+    Autopilot(ReachabilitySolver solver) {
+        this.solver = solver;
+    }
+
+    @Override
+    public boolean flap(GameSnapshot state) {
+        if (onPlan(state) || plan(state)) {
+            return plan[planNext++];
+        }
+
+        if (safeAfter(state, false)) return false;
+        if (safeAfter(state, true)) return true;
+
+        int gap = FlappySimulation.gap(state.hardMode);
+        for (int i = 0; i < state.pipeCount; i++) {
+            if (ReachabilitySolver.offset(state.pipeX[i]) > ReachabilitySolver.DX_MIN) {
+                return state.birdY > state.pipeHeight[i] + gap / 2;
+            }
+        }
+        return state.birdY > FlappySimulation.HEIGHT / 2;
+    }
+
+    // Whether the simulation is where the plan left it, so its next step still holds
+    private boolean onPlan(GameSnapshot state) {
+        if (planNext == 0 || planNext >= planLength || state.tick != planTick + planNext) return false;
+        return state.birdY == planY[planNext - 1] && state.birdVelocity == planVelocity[planNext - 1];
+    }
+
+    private boolean plan(GameSnapshot state) {
+        planLength = 0;
+        planNext = 0;
+        planTick = state.tick;
+        ReachabilitySolver.Table table = solver.table(state.hardMode, FlappySimulation.speedLevelFor(state.score));
+
+        for (int i = 0; i < state.pipeCount - 1; i++) {
+            int dx = ReachabilitySolver.offset((int) (state.pipeX[i] - table.speed));
+            if (dx <= ReachabilitySolver.DX_MIN) continue;
+            hardMode = state.hardMode;
+            score = state.score;
+            gapTop = state.pipeHeight[i];
+            nextGapTop = state.pipeHeight[i + 1];
+            nextOffset = state.pipeX[i + 1] - state.pipeX[i];
+            search++;
+            nodes = 0;
+            for (int flap = 0; flap < 2; flap++) {
+                double velocity = (flap == 1 ? table.jump : state.birdVelocity) + table.gravity;
+                double y = state.birdY + velocity;
+                if (ReachabilitySolver.inBounds(y) && through(y, velocity, dx, 1)) {
+                    record(0, flap == 1, y, velocity);
+                    return true;
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    // From the exact state after `depth` planned ticks, with the current pipe
+    // at dx, whether some run of flaps gets through it and hands over to the
+    // next pipe in a state the table calls safe
+    private boolean through(double y, double velocity, int dx, int depth) {
+        // The tick after the pipe is scored already runs at the next level
+        int level = FlappySimulation.speedLevelFor(dx < ReachabilitySolver.SCORE_DX ? score + 1 : score);
+        ReachabilitySolver.Table table = solver.table(hardMode, level);
+        if (dx <= ReachabilitySolver.DX_MIN) {
+            int nextDx = dx + nextOffset;
+            int row = (int) y - nextGapTop;
+            if (!table.clear(nextDx, row) || !table.safe(nextDx, row, table.velocityIndex(velocity))) return false;
+            planLength = depth;
+            return true;
+        }
+
+        int row = (int) y - gapTop;
+        int k = table.velocityIndex(velocity);
+        if (!table.clear(dx, row) || !table.safe(dx, row, k) || depth == MAX_PLAN) return false;
+        long key = (long) dx << 32 | (row & 0xFFFFL) << 16 | k;
+        if (failedBefore(key) || ++nodes > SEARCH_NODES) return false;
+
+        for (int flap = 0; flap < 2; flap++) {
+            double next = (flap == 1 ? table.jump : velocity) + table.gravity;
+            if (ReachabilitySolver.inBounds(y + next) && through(y + next, next, dx - table.step, depth + 1)) {
+                record(depth, flap == 1, y + next, next);
+                return true;
+            }
+        }
+        markFailed(key);
+        return false;
+    }
+
+    private void record(int step, boolean flap, double y, double velocity) {
+        plan[step] = flap;
+        planY[step] = y;
+        planVelocity[step] = velocity;
+    }
+
+    // Whether, after one more tick with or without a flap, the table can
+    // still get the bird through the current pipe
+    private boolean safeAfter(GameSnapshot state, boolean flap) {
+        ReachabilitySolver.Table table = solver.table(state.hardMode, FlappySimulation.speedLevelFor(state.score));
+        double velocity = (flap ? table.jump : state.birdVelocity) + table.gravity;
+        double y = state.birdY + velocity;
+        if (!ReachabilitySolver.inBounds(y)) return false;
+
+        for (int i = 0; i < state.pipeCount; i++) {
+            int dx = ReachabilitySolver.offset((int) (state.pipeX[i] - table.speed));
+            if (dx <= ReachabilitySolver.DX_MIN) continue;
+            int row = (int) y - state.pipeHeight[i];
+            return table.clear(dx, row) && table.safe(dx, row, table.velocityIndex(velocity));
+        }
+        return true;
+    }
+
+    private boolean failedBefore(long key) {
+        int index = hash(key);
+        for (int probe = 0; probe < MEMO_PROBES; probe++) {
+            int slot = (index + probe) & (MEMO_SIZE - 1);
+            if (failedSearch[slot] != search) return false;
+            if (failed[slot] == key) return true;
+        }
+        return false;
+    }
+
+    // Best effort: a state that finds no free slot is just searched again
+    private void markFailed(long key) {
+        int index = hash(key);
+        for (int probe = 0; probe < MEMO_PROBES; probe++) {
+            int slot = (index + probe) & (MEMO_SIZE - 1);
+            if (failedSearch[slot] != search) {
+                failedSearch[slot] = search;
+                failed[slot] = key;
+                return;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40);
+    }
+}
@@ -0,0 +1,251 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+// Scenery for one mode (day or night), rendered once into cached layers.
+// Each frame only blits the layers at their scroll offsets; the star twinkle
+// is the one small per-frame overlay.
+class BackgroundLayers {
+    private static final int WIDTH = FlappySimulation.WIDTH;
+    private static final int HEIGHT = FlappySimulation.HEIGHT;
+    private static final int GROUND_HEIGHT = FlappySimulation.GROUND_HEIGHT;
+    private static final Color PANEL_BACKGROUND = new Color(238, 238, 238);
+
+    static final int STAR_COUNT = 100;
+    private static final int TREE_COUNT = 13;
+    private static final int FOREST_TILE_WIDTH = WIDTH / 2; // Half-speed parallax wraps seamlessly
+    private static final int FOREST_TOP = HEIGHT / 2 - 240;
+    private static final Color CLOUD_COLOR = new Color(255, 255, 255, 200);
+    private static final Color CLOUD_SHADOW_COLOR = new Color(255, 255, 255, 100);
+
+    private final boolean nightMode;
+    private final Random random;
+
+    // Stars are baked into the sky; positions are kept for the twinkle pass
+    private final int[] starX = new int[STAR_COUNT];
+    private final int[] starY = new int[STAR_COUNT];
+    private final int[] starSize = new int[STAR_COUNT];
+    private final int[] starAlpha = new int[STAR_COUNT];
+    private final BufferedImage[] twinkleSprites = new BufferedImage[STAR_COUNT];
+    private final int[] treeHeight = new int[TREE_COUNT];
+    private final int[] treeWidth = new int[TREE_COUNT];
+    private final Color[] trunkColors = new Color[TREE_COUNT];
+    private final Color[] leafColors = new Color[TREE_COUNT];
+    private final int[] grassHeight = new int[WIDTH / 10];
+
+    // Cloud sprites by size; filled oval shapes allocate on every draw, blits do not
+    private final BufferedImage[] cloudSprites =
+        new BufferedImage[FlappySimulation.CLOUD_WIDTHS * FlappySimulation.CLOUD_HEIGHTS];
+
+    private final CachedLayer sky;
+    private int skyStars = STAR_COUNT; // How many stars the cached sky has baked in
+    private final CachedLayer forest;
+    private final CachedLayer ground;
+
+    // gc may be null when rendering offscreen; layers then live in BufferedImages
+    BackgroundLayers(boolean nightMode, GraphicsConfiguration gc) {
+        this.nightMode = nightMode;
+        this.random = new Random(nightMode ? 2 : 1);
+
+        for (int i = 0; i < STAR_COUNT; i++) {
+            starX[i] = random.nextInt(WIDTH);
+            starY[i] = random.nextInt(HEIGHT / 2);
+            starSize[i] = 1 + random.nextInt(3);
+            starAlpha[i] = (int)(255 * (0.5f + random.nextFloat() * 0.5f));
+            twinkleSprites[i] = twinkleSprite(starSize[i] + 2, Math.min(255, starAlpha[i] + 50));
+        }
+        for (int i = 0; i < TREE_COUNT; i++) {
+            treeHeight[i] = 60 + random.nextInt(140);
+            treeWidth[i] = 30 + random.nextInt(20);
+            trunkColors[i] = nightMode ?
+                new Color(80 + random.nextInt(40), 50 + random.nextInt(30), 20 + random.nextInt(20)) :
+                new Color(101 + random.nextInt(50), 67 + random.nextInt(40), 33 + random.nextInt(20));
+            leafColors[i] = nightMode ?
+                new Color(0, 60 + random.nextInt(40), 0) :
+                new Color(30 + random.nextInt(40), 120 + random.nextInt(50), 30 + random.nextInt(40));
+        }
+        for (int i = 0; i < grassHeight.length; i++) {
+            grassHeight[i] = 5 + random.nextInt(10);
+        }
+
+        sky = new CachedLayer(gc, WIDTH, HEIGHT - GROUND_HEIGHT, Transparency.OPAQUE) {
+            @Override
+            void paint(Graphics2D g2d) {
+                paintSky(g2d);
+            }
+        };
+        forest = new CachedLayer(gc, FOREST_TILE_WIDTH, HEIGHT / 2 - FOREST_TOP, Transparency.TRANSLUCENT) {
+            @Override
+            void paint(Graphics2D g2d) {
+                paintForest(g2d);
+            }
+        };
+        ground = new CachedLayer(gc, WIDTH, GROUND_HEIGHT, Transparency.OPAQUE) {
+            @Override
+            void paint(Graphics2D g2d) {
+                paintGround(g2d);
+            }
+        };
+    }
+
+    // Draws the sky with only the first stars of its stars, letting them
+    // twinkle if twinkle is set. A new count re-renders the cached sky once,
+    // so a quality tier change costs one repaint rather than per-frame work
+    void drawSky(Graphics2D g2d, int stars, boolean twinkle) {
+        stars = Math.min(stars, STAR_COUNT);
+        if (nightMode && stars != skyStars) {
+            skyStars = stars;
+            sky.invalidate();
+        }
+        g2d.drawImage(sky.image(), 0, 0, null);
+
+        // Make some stars twinkle
+        if (nightMode && twinkle) {
+            for (int i = 0; i < stars; i++) {
+                if (random.nextInt(100) < 5) {
+                    g2d.drawImage(twinkleSprites[i], starX[i] - 1, starY[i] - 1, null);
+                }
+            }
+        }
+    }
+
+    void drawCloud(Graphics2D g2d, int x, int y, int width, int height) {
+        int index = (width - FlappySimulation.CLOUD_MIN_WIDTH) * FlappySimulation.CLOUD_HEIGHTS
+            + height - FlappySimulation.CLOUD_MIN_HEIGHT;
+        BufferedImage sprite = cloudSprites[index];
+        if (sprite == null) {
+            sprite = cloudSprite(width, height);
+            cloudSprites[index] = sprite;
+        }
+        // Sprites include room for the top puff, which rises a third above the cloud
+        g2d.drawImage(sprite, x, y - height / 3, null);
+    }
+
+    void drawForest(Graphics2D g2d, int backgroundOffset) {
+        Image image = forest.image();
+        int x = -(backgroundOffset / 2) % FOREST_TILE_WIDTH;
+        for (; x < WIDTH; x += FOREST_TILE_WIDTH) {
+            g2d.drawImage(image, x, FOREST_TOP, null);
+        }
+    }
+
+    // Scrolls left a pixel a tick, the way the pipes and the forest move
+    void drawGround(Graphics2D g2d, int backgroundOffset) {
+        Image image = ground.image();
+        int x = -(backgroundOffset % WIDTH);
+        g2d.drawImage(image, x, HEIGHT - GROUND_HEIGHT, null);
+        g2d.drawImage(image, x + WIDTH, HEIGHT - GROUND_HEIGHT, null);
+    }
+
+    private static BufferedImage twinkleSprite(int size, int alpha) {
+        BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(new Color(255, 255, 255, alpha));
+        g2d.fillOval(0, 0, size, size);
+        g2d.dispose();
+        return sprite;
+    }
+
+    private static BufferedImage cloudSprite(int width, int height) {
+        int top = height / 3;
+        BufferedImage sprite = new BufferedImage(width + width / 6 + 5, height + top + 5,
+            BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Main cloud
+        g2d.setColor(CLOUD_COLOR);
+        g2d.fillOval(0, top, width, height);
+        g2d.fillOval(width/3, 0, width * 2/3, height);
+        g2d.fillOval(width * 2/3, top, width/2, height);
+
+        // Cloud shadow
+        g2d.setColor(CLOUD_SHADOW_COLOR);
+        g2d.fillOval(5, top + 5, width, height);
+        g2d.dispose();
+        return sprite;
+    }
+
+    private void paintSky(Graphics2D g2d) {
+        // The area between the horizon and the ground shows the panel color
+        g2d.setColor(PANEL_BACKGROUND);
+        g2d.fillRect(0, HEIGHT / 2, WIDTH, HEIGHT / 2 - GROUND_HEIGHT);
+
+        if (nightMode) {
+            // Enhanced night background with gradient
+            g2d.setPaint(new GradientPaint(
+                0, 0, new Color(10, 10, 40),
+                0, HEIGHT/2, new Color(15, 15, 60)
+            ));
+            g2d.fillRect(0, 0, WIDTH, HEIGHT/2);
+
+            // Stars with varying brightness
+            for (int i = 0; i < skyStars; i++) {
+                g2d.setColor(new Color(255, 255, 255, starAlpha[i]));
+                g2d.fillOval(starX[i], starY[i], starSize[i], starSize[i]);
+            }
+
+            // Enhanced moon with craters
+            g2d.setColor(new Color(230, 230, 230));
+            g2d.fillOval(650, 50, 70, 70);
+            g2d.setColor(new Color(210, 210, 210));
+            g2d.fillOval(660, 65, 15, 15);
+            g2d.fillOval(680, 80, 10, 10);
+            g2d.fillOval(665, 90, 8, 8);
+        } else {
+            // Enhanced day background with gradient sky
+            g2d.setPaint(new GradientPaint(
+                0, 0, new Color(100, 180, 255),
+                0, HEIGHT/2, new Color(176, 226, 255)
+            ));
+            g2d.fillRect(0, 0, WIDTH, HEIGHT/2);
+
+            // Sun
+            g2d.setColor(new Color(255, 255, 200));
+            g2d.fillOval(700, 30, 60, 60);
+            g2d.setColor(Color.YELLOW);
+            g2d.fillOval(705, 35, 50, 50);
+        }
+    }
+
+    private void paintForest(Graphics2D g2d) {
+        int baseY = HEIGHT / 2 - FOREST_TOP;
+        for (int i = 0; i < TREE_COUNT; i++) {
+            int height = treeHeight[i];
+            int width = treeWidth[i];
+            // Draw wrapped copies so the tile repeats without seams
+            for (int x = (i * 100) % FOREST_TILE_WIDTH - FOREST_TILE_WIDTH; x <= FOREST_TILE_WIDTH; x += FOREST_TILE_WIDTH) {
+                // Tree trunk
+                g2d.setColor(trunkColors[i]);
+                g2d.fillRect(x + width/2 - 5, baseY - height, 10, height);
+
+                // Tree leaves
+                g2d.setColor(leafColors[i]);
+                g2d.fillOval(x, baseY - height - 30, width, 60);
+                g2d.fillOval(x - 10, baseY - height - 10, width + 20, 50);
+            }
+        }
+    }
+
+    private void paintGround(Graphics2D g2d) {
+        // Ground with gradient
+        g2d.setPaint(new GradientPaint(
+            0, 0, new Color(120, 60, 20),
+            0, GROUND_HEIGHT, new Color(160, 100, 50)
+        ));
+        g2d.fillRect(0, 0, WIDTH, GROUND_HEIGHT);
+
+        // Grass with pattern
+        g2d.setColor(nightMode ? new Color(0, 80, 0) : new Color(40, 160, 40));
+        for (int i = 0; i < WIDTH; i += 10) {
+            g2d.fillRect(i, 0, 3, grassHeight[i / 10]);
+        }
+
+        // Ground details
+        g2d.setColor(new Color(140, 90, 40));
+        for (int i = 0; i < WIDTH; i += 15) {
+            g2d.fillOval(i, 20, 8, 4);
+        }
+    }
+}
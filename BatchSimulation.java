@@ -0,0 +1,380 @@
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Many independent games stepped in lockstep, for training and evaluating
+// flap policies against the real rules. The state is struct-of-arrays: one
+// primitive array per field with an element per game, and pipe fields stored
+// slot-major, so each phase of a tick is a flat pass over consecutive games
+// that the JIT can unroll and vectorize. Batches larger than MIN_SPLIT games
+// are split across the fork-join pool.
+//
+// Gravity, jumps, pipe speeds, scoring, recycling and collisions are
+// FlappySimulation's own static rule kernels, pipes come from each game's own
+// LevelGenerator, and a pipe occupies the same ring slot, with the same head,
+// it would in FlappySimulation, so a game reset with a seed plays out exactly
+// as FlappySimulation.reset(seed) does given the same flaps. Clouds and
+// animation never affect the rules and are not simulated. main() measures
+// stepping speed, or with --verify steps FlappySimulations alongside the
+// batch, at the game's pipe spacing and a narrow one, and compares every
+// field each tick:
+//
+//   java BatchSimulation [games] [ticks] [hard]
+//   java BatchSimulation --verify [games] [ticks]
+public class BatchSimulation {
+    static final int MIN_SPLIT = 1024; // Games per fork-join leaf
+    private static final int NARROW_SPACING = 90; // For --verify
+
+    final int size;
+    final boolean hardMode;
+    final int pipeSpacing;
+    final int pipeCount;
+
+    final double[] birdY;
+    final double[] birdVelocity;
+    final int[] score;
+    final int[] speedLevel;
+    final boolean[] gameOver;
+    final long[] tick;
+    final int[] events; // FlappySimulation.EVENT_* bits from the last step
+
+    // Slot s of game g is at s * size + g
+    final int[] pipeX;
+    final int[] pipePrevX;
+    final int[] pipeHeight;
+    final boolean[] pipePassed;
+    final int[] pipeHead; // Per game: the slot of its leftmost pipe
+
+    private final LevelGenerator[] levels;
+    final int gap;
+    private final double gravity;
+    private final double[] jump = new double[4];      // By speed level
+    private final double[] pipeSpeed = new double[4]; // By speed level
+
+    // Per step: games that were still playing, and the screen position of the
+    // first pipe each one hit, or pipeCount if none
+    private final boolean[] stepping;
+    private final int[] hitRank;
+
+    BatchSimulation(int size, boolean hardMode) {
+        this(size, hardMode, FlappySimulation.PIPE_SPACING);
+    }
+
+    BatchSimulation(int size, boolean hardMode, int pipeSpacing) {
+        this.size = size;
+        this.hardMode = hardMode;
+        this.pipeSpacing = pipeSpacing;
+        pipeCount = (FlappySimulation.WIDTH + FlappySimulation.PIPE_WIDTH + pipeSpacing - 1) / pipeSpacing;
+
+        birdY = new double[size];
+        birdVelocity = new double[size];
+        score = new int[size];
+        speedLevel = new int[size];
+        gameOver = new boolean[size];
+        tick = new long[size];
+        events = new int[size];
+        pipeX = new int[pipeCount * size];
+        pipePrevX = new int[pipeCount * size];
+        pipeHeight = new int[pipeCount * size];
+        pipePassed = new boolean[pipeCount * size];
+        pipeHead = new int[size];
+        stepping = new boolean[size];
+        hitRank = new int[size];
+
+        gap = FlappySimulation.gap(hardMode);
+        gravity = FlappySimulation.gravity(hardMode);
+        for (int level = 1; level <= 3; level++) {
+            jump[level] = FlappySimulation.jumpVelocity(level, hardMode);
+            pipeSpeed[level] = FlappySimulation.pipeSpeed(level, hardMode);
+        }
+
+        levels = new LevelGenerator[size];
+        for (int g = 0; g < size; g++) {
+            levels[g] = new LevelGenerator(pipeSpacing);
+            gameOver[g] = true; // Until reset
+        }
+    }
+
+    void reset(int game, long seed) {
+        levels[game].restart(seed, hardMode);
+        birdY[game] = FlappySimulation.HEIGHT / 2;
+        birdVelocity[game] = 0;
+        score[game] = 0;
+        speedLevel[game] = 1;
+        gameOver[game] = false;
+        tick[game] = 0;
+        events[game] = 0;
+        pipeHead[game] = 0;
+        for (int s = 0; s < pipeCount; s++) {
+            placePipe(s * size + game, FlappySimulation.WIDTH + s * pipeSpacing, game);
+        }
+    }
+
+    private void placePipe(int index, int x, int game) {
+        pipeX[index] = x;
+        pipePrevX[index] = x;
+        pipeHeight[index] = levels[game].nextHeight();
+        pipePassed[index] = false;
+    }
+
+    // Slot of the first pipe the bird has not yet cleared
+    int nextPipe(int game) {
+        int next = 0;
+        int nextX = Integer.MAX_VALUE;
+        for (int s = 0; s < pipeCount; s++) {
+            int x = pipeX[s * size + game];
+            if (x + FlappySimulation.PIPE_WIDTH - FlappySimulation.COLLISION_INSET > FlappySimulation.BIRD_LEFT && x < nextX) {
+                next = s;
+                nextX = x;
+            }
+        }
+        return next;
+    }
+
+    // Advances every game that is not over by one tick; flap[g] is game g's input
+    void step(boolean[] flap) {
+        if (size <= MIN_SPLIT) {
+            step(flap, 0, size);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Slice(flap, 0, size));
+        }
+    }
+
+    @SuppressWarnings("serial") // Never serialized
+    private final class Slice extends RecursiveAction {
+        private final boolean[] flap;
+        private final int from;
+        private final int to;
+
+        Slice(boolean[] flap, int from, int to) {
+            this.flap = flap;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_SPLIT) {
+                step(flap, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Slice(flap, from, middle), new Slice(flap, middle, to));
+            }
+        }
+    }
+
+    // FlappySimulation.step for games [from, to), phase by phase
+    void step(boolean[] flap, int from, int to) {
+        // Bird: a flap uses the level of the previous tick, then the level
+        // follows the score and gravity is applied
+        for (int g = from; g < to; g++) {
+            boolean live = !gameOver[g];
+            int oldLevel = speedLevel[g];
+            int level = FlappySimulation.speedLevelFor(score[g]);
+            double velocity = (flap[g] ? jump[oldLevel] : birdVelocity[g]) + gravity;
+            stepping[g] = live;
+            hitRank[g] = pipeCount;
+            birdVelocity[g] = live ? velocity : birdVelocity[g];
+            birdY[g] = live ? birdY[g] + velocity : birdY[g];
+            speedLevel[g] = live ? level : oldLevel;
+            tick[g] += live ? 1 : 0;
+            events[g] = live && level > oldLevel ? FlappySimulation.EVENT_SPEED_UP : 0;
+        }
+
+        // Pipes, one slot at a time: scroll, score and collide, keeping the
+        // hit nearest the head since FlappySimulation stops at the first
+        for (int s = 0; s < pipeCount; s++) {
+            int base = s * size;
+            for (int g = from; g < to; g++) {
+                int i = base + g;
+                boolean live = stepping[g];
+                int x = pipeX[i];
+                int moved = FlappySimulation.scroll(x, pipeSpeed[speedLevel[g]]);
+                boolean scored = live && !pipePassed[i] && FlappySimulation.scores(moved);
+                boolean hit = live && FlappySimulation.collides(birdY[g], moved, pipeHeight[i], gap);
+                int rank = s - pipeHead[g];
+                rank += rank < 0 ? pipeCount : 0;
+
+                pipePrevX[i] = live ? x : pipePrevX[i];
+                pipeX[i] = live ? moved : x;
+                pipePassed[i] |= scored;
+                score[g] += scored ? 1 : 0;
+                events[g] |= scored ? FlappySimulation.EVENT_SCORE : 0;
+                hitRank[g] = hit && rank < hitRank[g] ? rank : hitRank[g];
+            }
+        }
+
+        // Collisions, recycling and the ground; few games need any of it in a given tick
+        for (int g = from; g < to; g++) {
+            if (!stepping[g]) continue;
+
+            if (hitRank[g] < pipeCount) {
+                undoPastHit(g);
+                gameOver[g] = true;
+                events[g] |= FlappySimulation.EVENT_HIT;
+                continue;
+            }
+
+            int head = pipeHead[g];
+            if (FlappySimulation.offScreen(pipeX[head * size + g])) {
+                int last = (head == 0 ? pipeCount : head) - 1;
+                placePipe(head * size + g, pipeX[last * size + g] + pipeSpacing, g);
+                pipeHead[g] = head + 1 == pipeCount ? 0 : head + 1;
+            }
+
+            if (FlappySimulation.outOfBounds(birdY[g])) {
+                gameOver[g] = true;
+                events[g] |= FlappySimulation.EVENT_HIT;
+            }
+        }
+    }
+
+    // FlappySimulation returns at the pipe it hits, so the pipes after it in
+    // screen order neither moved nor scored this tick. A pipe scored this tick
+    // if it is passed now but was not behind the bird before it moved.
+    private void undoPastHit(int g) {
+        boolean scored = false;
+        for (int rank = 0; rank < pipeCount; rank++) {
+            int slot = pipeHead[g] + rank;
+            int i = (slot < pipeCount ? slot : slot - pipeCount) * size + g;
+            boolean scoredNow = pipePassed[i] && !FlappySimulation.scores(pipePrevX[i]);
+            if (rank <= hitRank[g]) {
+                scored |= scoredNow;
+                continue;
+            }
+            pipeX[i] = pipePrevX[i];
+            if (scoredNow) {
+                pipePassed[i] = false;
+                score[g]--;
+            }
+        }
+        events[g] = scored ? events[g] : events[g] & ~FlappySimulation.EVENT_SCORE;
+    }
+
+    // Tournament.Chaser's rule, aimed at the nearest pipe it counts as ahead.
+    // Enough to pass some pipes, and cheap next to a tick
+    private static void chase(BatchSimulation batch, boolean[] flap) {
+        for (int g = 0; g < batch.size; g++) {
+            int target = -1;
+            for (int s = 0; s < batch.pipeCount; s++) {
+                int index = s * batch.size + g;
+                if (Tournament.Chaser.ahead(batch.pipeX[index])
+                        && (target < 0 || batch.pipeX[index] < batch.pipeX[target])) {
+                    target = index;
+                }
+            }
+            flap[g] = target < 0 ? batch.birdY[g] > FlappySimulation.HEIGHT / 2
+                : Tournament.Chaser.flapsUnder(batch.birdY[g], batch.birdVelocity[g], batch.pipeHeight[target], batch.gap);
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean verify = args.length > 0 && args[0].equals("--verify");
+        int first = verify ? 1 : 0;
+        int games = args.length > first ? Integer.parseInt(args[first]) : (verify ? 512 : 16384);
+        int ticks = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : (verify ? 5000 : 2000);
+
+        if (verify) {
+            // Narrow spacing puts two pipes over the bird at once, so the order hits are found in matters
+            boolean ok = true;
+            for (int spacing : new int[] {FlappySimulation.PIPE_SPACING, NARROW_SPACING}) {
+                ok &= verify(games, ticks, false, spacing) & verify(games, ticks, true, spacing);
+            }
+            System.exit(ok ? 0 : 1);
+        }
+
+        boolean hardMode = args.length > first + 2 && args[first + 2].equals("hard");
+        BatchSimulation batch = new BatchSimulation(games, hardMode);
+        Random seeds = new Random(1);
+        for (int g = 0; g < games; g++) {
+            batch.reset(g, seeds.nextLong());
+        }
+
+        boolean[] flap = new boolean[games];
+        long steps = 0;
+        long stepNanos = 0;
+        int warmup = Math.min(500, ticks / 4);
+        for (int t = 0; t < warmup + ticks; t++) {
+            chase(batch, flap);
+            long start = System.nanoTime();
+            batch.step(flap);
+            long elapsed = System.nanoTime() - start;
+            for (int g = 0; g < games; g++) {
+                if (t >= warmup && batch.stepping[g]) steps++;
+                if (batch.gameOver[g]) batch.reset(g, seeds.nextLong());
+            }
+            if (t >= warmup) stepNanos += elapsed;
+        }
+        System.out.printf(Locale.ROOT, "%d %s games x %d ticks: %.1f M game steps/s on %d threads (%.1f ns per game step)%n",
+            games, hardMode ? "hard" : "normal", ticks, steps * 1e3 / stepNanos,
+            games > MIN_SPLIT ? ForkJoinPool.getCommonPoolParallelism() : 1, stepNanos / (double) steps);
+    }
+
+    // Steps FlappySimulations next to the batch with the same seeds and flaps,
+    // restarting games as they end, and reports the first field that differs
+    private static boolean verify(int games, int ticks, boolean hardMode, int pipeSpacing) {
+        BatchSimulation batch = new BatchSimulation(games, hardMode, pipeSpacing);
+        FlappySimulation[] sims = new FlappySimulation[games];
+        Random seeds = new Random(hardMode ? 2 : 1);
+        Random noise = new Random(3);
+        for (int g = 0; g < games; g++) {
+            long seed = seeds.nextLong();
+            sims[g] = new FlappySimulation(new Random(), batch.pipeSpacing);
+            sims[g].hardMode = hardMode;
+            sims[g].reset(seed);
+            batch.reset(g, seed);
+        }
+
+        boolean[] flap = new boolean[games];
+        long runs = games;
+        long passed = 0;
+        for (int t = 0; t < ticks; t++) {
+            chase(batch, flap);
+            for (int g = 0; g < games; g++) {
+                flap[g] ^= noise.nextInt(256) == 0; // Some wrong moves, so games end in every way
+            }
+            batch.step(flap);
+            for (int g = 0; g < games; g++) {
+                FlappySimulation sim = sims[g];
+                int simEvents = sim.step(flap[g]);
+                String diff = compare(batch, g, sim, simEvents);
+                if (diff != null) {
+                    System.out.printf(Locale.ROOT, "%s spacing %d game %d differs at tick %d: %s%n",
+                        hardMode ? "hard" : "normal", pipeSpacing, g, sim.tick, diff);
+                    return false;
+                }
+                if (sim.gameOver) {
+                    passed += sim.score;
+                    runs++;
+                    long seed = seeds.nextLong();
+                    sim.reset(seed);
+                    batch.reset(g, seed);
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-6s spacing %d: %d games x %d ticks match FlappySimulation (%d runs, %d pipes passed)%n",
+            hardMode ? "hard" : "normal", pipeSpacing, games, ticks, runs, passed);
+        return true;
+    }
+
+    private static String compare(BatchSimulation batch, int g, FlappySimulation sim, int simEvents) {
+        if (batch.birdY[g] != sim.birdY) return "birdY " + batch.birdY[g] + " vs " + sim.birdY;
+        if (batch.birdVelocity[g] != sim.birdVelocity) return "birdVelocity " + batch.birdVelocity[g] + " vs " + sim.birdVelocity;
+        if (batch.score[g] != sim.score) return "score " + batch.score[g] + " vs " + sim.score;
+        if (batch.speedLevel[g] != sim.speedLevel) return "speedLevel " + batch.speedLevel[g] + " vs " + sim.speedLevel;
+        if (batch.gameOver[g] != sim.gameOver) return "gameOver " + batch.gameOver[g] + " vs " + sim.gameOver;
+        if (batch.tick[g] != sim.tick) return "tick " + batch.tick[g] + " vs " + sim.tick;
+        if (batch.events[g] != simEvents) return "events " + batch.events[g] + " vs " + simEvents;
+        if (batch.pipeHead[g] != sim.pipeHead) return "pipeHead " + batch.pipeHead[g] + " vs " + sim.pipeHead;
+        for (int s = 0; s < batch.pipeCount; s++) {
+            int i = s * batch.size + g;
+            if (batch.pipeX[i] != sim.pipeX[s] || batch.pipeHeight[i] != sim.pipeHeight[s]
+                    || batch.pipePassed[i] != sim.pipePassed[s]) {
+                return "pipe slot " + s + " (" + batch.pipeX[i] + ", " + batch.pipeHeight[i] + ") vs ("
+                    + sim.pipeX[s] + ", " + sim.pipeHeight[s] + ")";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,118 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// The bird pre-rendered in every pose it is drawn in: per speed color, wing
+// position and tilt angle quantized to ANGLE_STEP degrees, with the speed
+// trail as its own sprite per speed level and angle. Each sprite is rasterized
+// the first time its pose comes up, in an image compatible with the target;
+// after that the bird is one blit, plus one for the trail, instead of a
+// rotated transform and up to fourteen antialiased shape fills.
+class BirdSprites {
+    private static final int WIDTH = FlappySimulation.BIRD_WIDTH;
+    private static final int HEIGHT = FlappySimulation.BIRD_HEIGHT;
+
+    static final int MIN_ANGLE = -90;
+    static final int MAX_ANGLE = 30;
+    static final int ANGLE_STEP = 2;
+    private static final int ANGLES = (MAX_ANGLE - MIN_ANGLE) / ANGLE_STEP + 1;
+    private static final int WINGS = 3;
+    private static final int[] WING_OFFSETS = {0, 3, -3};
+
+    // Sprites are square and centered on the rotation pivot, with room for the
+    // farthest point at any angle: the top of the body, or the last trail puff
+    private static final int BIRD_HALF = 34;
+    private static final int TRAIL_HALF = 62;
+
+    private static final Color[] BODY_COLORS = {Color.YELLOW, Color.ORANGE, Color.RED};
+    private static final Color WING_COLOR = new Color(200, 100, 0);
+    private static final Color BEAK_COLOR = new Color(255, 140, 0);
+    private static final Color TRAIL_COLOR = new Color(255, 255, 0, 100);
+
+    private final Image[] birds = new Image[BODY_COLORS.length * WINGS * ANGLES];
+    private final Image[] trails = new Image[(BODY_COLORS.length - 1) * ANGLES];
+    private final int[] beakX = new int[3];
+    private final int[] beakY = new int[3];
+
+    // Draws the bird with its body's top-left corner at (birdX, birdY - HEIGHT / 2)
+    // and tilted by its velocity, about the point HEIGHT / 2 below its center
+    void draw(Graphics2D g2d, int birdX, int birdY, double velocity, int speedLevel,
+              int animationFrame, boolean trail) {
+        int angle = (int) Math.round((Math.min(MAX_ANGLE, Math.max(MIN_ANGLE, velocity * 3)) - MIN_ANGLE) / ANGLE_STEP);
+        // Faster wing flap at higher speeds
+        int wing = (animationFrame * speedLevel) % WINGS;
+        int pivotX = birdX + WIDTH / 2;
+        int pivotY = birdY + HEIGHT / 2;
+
+        int index = ((speedLevel - 1) * WINGS + wing) * ANGLES + angle;
+        Image bird = birds[index];
+        if (bird == null) {
+            bird = sprite(g2d, BIRD_HALF, speedLevel, wing, angle, false);
+            birds[index] = bird;
+        }
+        g2d.drawImage(bird, pivotX - BIRD_HALF, pivotY - BIRD_HALF, null);
+
+        if (trail && speedLevel > 1) {
+            index = (speedLevel - 2) * ANGLES + angle;
+            Image image = trails[index];
+            if (image == null) {
+                image = sprite(g2d, TRAIL_HALF, speedLevel, 0, angle, true);
+                trails[index] = image;
+            }
+            g2d.drawImage(image, pivotX - TRAIL_HALF, pivotY - TRAIL_HALF, null);
+        }
+    }
+
+    private Image sprite(Graphics2D target, int half, int speedLevel, int wing, int angle, boolean trail) {
+        GraphicsConfiguration gc = target.getDeviceConfiguration();
+        BufferedImage image = gc != null
+            ? gc.createCompatibleImage(2 * half, 2 * half, Transparency.TRANSLUCENT)
+            : new BufferedImage(2 * half, 2 * half, BufferedImage.TYPE_INT_ARGB);
+
+        // Same shapes as drawing the bird live, with the pivot at the center
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.rotate(Math.toRadians(MIN_ANGLE + angle * ANGLE_STEP), half, half);
+        int birdX = half - WIDTH / 2;
+        int birdY = half - HEIGHT / 2;
+        if (trail) {
+            paintTrail(g2d, birdX, birdY, speedLevel);
+        } else {
+            paintBird(g2d, birdX, birdY, speedLevel, WING_OFFSETS[wing]);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private void paintBird(Graphics2D g2d, int birdX, int birdY, int speedLevel, int wingOffset) {
+        // Body color based on speed: yellow, orange, red
+        g2d.setColor(BODY_COLORS[speedLevel - 1]);
+        g2d.fillOval(birdX, birdY - HEIGHT / 2, WIDTH, HEIGHT);
+
+        // Wing
+        g2d.setColor(WING_COLOR);
+        g2d.fillOval(birdX + 10, birdY - HEIGHT / 2 + 10 + wingOffset, 15, 10);
+
+        // Eye
+        g2d.setColor(Color.BLACK);
+        g2d.fillOval(birdX + WIDTH - 15, birdY - HEIGHT / 2 + 10, 8, 8);
+        g2d.setColor(Color.WHITE);
+        g2d.fillOval(birdX + WIDTH - 14, birdY - HEIGHT / 2 + 11, 3, 3);
+
+        // Beak
+        g2d.setColor(BEAK_COLOR);
+        beakX[0] = birdX + WIDTH - 5;
+        beakX[1] = birdX + WIDTH + 5;
+        beakX[2] = birdX + WIDTH - 5;
+        beakY[0] = birdY;
+        beakY[1] = birdY + 4;
+        beakY[2] = birdY + 8;
+        g2d.fillPolygon(beakX, beakY, 3);
+    }
+
+    private void paintTrail(Graphics2D g2d, int birdX, int birdY, int speedLevel) {
+        g2d.setColor(TRAIL_COLOR);
+        for (int i = 0; i < speedLevel * 2; i++) {
+            g2d.fillOval(birdX - i * 5 - 10, birdY - HEIGHT / 4, WIDTH / 2, HEIGHT / 2);
+        }
+    }
+}
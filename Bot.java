@@ -0,0 +1,16 @@
+// A player that flies the bird instead of the keyboard. Once per tick, before
+// the tick is stepped, it is shown a copy of the game and says whether to
+// flap. The copy belongs to the caller and is overwritten for the next tick,
+// so a bot keeps whatever it needs from it in its own fields. A bot may hold
+// state between calls but serves one game at a time.
+//
+// FlappyBird --bot MyBot flies a bot from the class path when A is pressed,
+// and Tournament --bot MyBot enters it in a tournament; either way the class
+// needs a public no-argument constructor.
+interface Bot {
+    boolean flap(GameSnapshot state);
+
+    static Bot create(String className) throws ReflectiveOperationException {
+        return Class.forName(className).asSubclass(Bot.class).getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// Decides when an adaptive setting should trade quality for time. It collects
+// WINDOW timings, and at the end of each window compares their 90th
+// percentile with the frame budget: above stepDownLoad of it the setting
+// should step down, and after STEP_UP_WINDOWS windows in a row below
+// stepUpLoad it may step back up. QualityGovernor (effects) and RenderTarget
+// (resolution) each keep one; FlappyBird orders their steps so a slow window
+// only ever moves one of them.
+class BudgetController {
+    static final int HOLD = 0;
+    static final int STEP_DOWN = 1;
+    static final int STEP_UP = 2;
+
+    private static final int WINDOW = 60;
+    private static final int STEP_UP_WINDOWS = 5; // Consecutive calm windows before stepping up
+
+    private final String measured; // What the timings are of, for the log line
+    private final double stepDownLoad;
+    private final double stepUpLoad;
+    private long budgetNanos = FlappySimulation.TICK_NANOS;
+    private final long[] window = new long[WINDOW];
+    private int filled;
+    private int calmWindows;
+    private long p90;
+
+    BudgetController(String measured, double stepDownLoad, double stepUpLoad) {
+        this.measured = measured;
+        this.stepDownLoad = stepDownLoad;
+        this.stepUpLoad = stepUpLoad;
+    }
+
+    void setBudget(long frameNanos) {
+        budgetNanos = frameNanos;
+    }
+
+    long budget() {
+        return budgetNanos;
+    }
+
+    // 90th percentile of the last full window
+    long p90() {
+        return p90;
+    }
+
+    // Records one timing; at the end of a window, whether to step
+    int sample(long nanos) {
+        window[filled++] = nanos;
+        if (filled < WINDOW) return HOLD;
+        filled = 0;
+
+        Arrays.sort(window);
+        p90 = window[WINDOW * 9 / 10];
+        if (p90 > budgetNanos * stepDownLoad) {
+            calmWindows = 0;
+            return STEP_DOWN;
+        }
+        if (p90 < budgetNanos * stepUpLoad) {
+            if (++calmWindows >= STEP_UP_WINDOWS) {
+                calmWindows = 0;
+                return STEP_UP;
+            }
+            return HOLD;
+        }
+        calmWindows = 0;
+        return HOLD;
+    }
+
+    // Logs a step the owner took on the last window
+    void logChange(String setting, String from, String to) {
+        System.out.println(String.format(Locale.ROOT, "%s %s -> %s (p90 %s %.1f ms of %.1f ms budget)",
+            setting, from, to, measured, p90 / 1e6, budgetNanos / 1e6));
+    }
+}
@@ -0,0 +1,74 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+// A cached image that is re-rendered whenever the video memory copy is lost or
+// the owner marks it stale. gc may be null when rendering offscreen; the image
+// then lives in a BufferedImage.
+abstract class CachedLayer {
+    private final GraphicsConfiguration gc;
+    private final int width;
+    private final int height;
+    private final int transparency;
+    private Image image;
+    private boolean stale;
+
+    CachedLayer(GraphicsConfiguration gc, int width, int height, int transparency) {
+        this.gc = gc;
+        this.width = width;
+        this.height = height;
+        this.transparency = transparency;
+    }
+
+    abstract void paint(Graphics2D g2d);
+
+    // Re-renders the image the next time it is used
+    void invalidate() {
+        stale = true;
+    }
+
+    Image image() {
+        if (gc == null) {
+            if (image == null) {
+                image = new BufferedImage(width, height,
+                    transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+                stale = true;
+            }
+            if (stale) {
+                repaint(((BufferedImage) image).createGraphics());
+            }
+            return image;
+        }
+
+        // The surface can be lost again while painting, so validate and repaint
+        // until a paint survives
+        VolatileImage volatileImage = (VolatileImage) image;
+        do {
+            int status = volatileImage == null ? VolatileImage.IMAGE_INCOMPATIBLE : volatileImage.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (volatileImage != null) {
+                    volatileImage.flush();
+                }
+                volatileImage = gc.createCompatibleVolatileImage(width, height, transparency);
+                image = volatileImage;
+                stale = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                stale = true;
+            }
+            if (stale) {
+                repaint(volatileImage.createGraphics());
+            }
+        } while (volatileImage.contentsLost());
+        return volatileImage;
+    }
+
+    private void repaint(Graphics2D g2d) {
+        stale = false;
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        paint(g2d);
+        g2d.dispose();
+    }
+}
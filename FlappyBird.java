@@ -1,603 +1,838 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
-import java.util.ArrayList;
+import java.awt.image.BufferStrategy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 import java.io.*;
-import javax.sound.sampled.*;
 
-public class FlappyBird extends JPanel implements ActionListener, KeyListener {
-    private static final int WIDTH = 800;
-    private static final int HEIGHT = 600;
-    private static final int GROUND_HEIGHT = 50;
-    private static final int BIRD_WIDTH = 40;
-    private static final int BIRD_HEIGHT = 30;
-    private static final int PIPE_WIDTH = 80;
-    private static final int PIPE_GAP = 200;
-    private static final int PIPE_SPACING = 300;
-    private static final double GRAVITY = 0.5;
-    private static final double JUMP_STRENGTH = -10;
-    
-    private Timer timer;
-    private double birdY;
-    private double birdVelocity;
-    private ArrayList<Pipe> pipes;
-    private Random random;
-    private int score;
+public class FlappyBird extends Canvas implements Runnable, KeyListener {
+    private static final int WIDTH = FlappySimulation.WIDTH;
+    private static final int HEIGHT = FlappySimulation.HEIGHT;
+    private static final int GROUND_HEIGHT = FlappySimulation.GROUND_HEIGHT;
+    private static final int BIRD_WIDTH = FlappySimulation.BIRD_WIDTH;
+    private static final int BIRD_HEIGHT = FlappySimulation.BIRD_HEIGHT;
+    private static final int PIPE_WIDTH = FlappySimulation.PIPE_WIDTH;
+    private static final long TICK_NANOS = FlappySimulation.TICK_NANOS;
+    private static final long MAX_FRAME_NANOS = 250_000_000L; // Avoid a catch-up spiral after a stall
+    
+    // Two threads: "game-sim" owns the simulation and input and runs fixed
+    // ticks, "game-loop" draws at the display rate from the latest snapshot
+    private volatile boolean running;
+    private final InputQueue input = new InputQueue();
+    private final FlappySimulation sim;
+    private final SnapshotBuffer snapshots;
+    private GameSnapshot view; // What the renderer is drawing
+    private GameSnapshot offscreenView; // For render(Graphics2D, double) outside the loop
+    private Thread simThread;
+    
+    // Timing histograms; F3 toggles the overlay, and they are written out on exit
+    private static final String STATS_FILE = System.getProperty("flappy.stats.file", "flappy-stats.txt");
+    private final FrameStats stats = new FrameStats();
+    private boolean showStats;
+    
+    // Sheds visual effects when frames run close to the budget; -Dflappy.quality pins a tier
+    private final QualityGovernor quality = new QualityGovernor(System.getProperty("flappy.quality", "auto"));
+    
+    // The scene is drawn at 800x600 times a render scale and stretched to the window
+    private final RenderTarget target = new RenderTarget(WIDTH, HEIGHT, System.getProperty("flappy.renderScale", "auto"));
+    
     private int highScore;
-    private boolean gameOver;
     private boolean gameStarted;
     private boolean gamePaused;
-    private boolean hardMode;
     private boolean nightMode;
+    private boolean jumpPending;
+    
+    // Input latency: arrival time of the key being handled, of the pending
+    // flap, and of the newest input whose effect is in the simulation state
+    private long keyNanos;
+    private long jumpNanos;
+    private long effectNanos;
+    private long presentedInputNanos; // Render thread: last one measured
+    
+    // Replays: every run is recorded, and a loaded replay drives the bird
+    // instead of the keyboard
+    private static final String REPLAY_DIR = "replays";
+    private static final DateTimeFormatter REPLAY_NAME = DateTimeFormatter.ofPattern("'run-'yyyyMMdd-HHmmss-SSS'.fbr'");
+    private final Random seeds = new Random();
+    private long runSeed;
+    private Replay recording;
+    private ReplayPlayer replayPlayer;
+    
+    // Save states: Backspace rewinds REWIND_TICKS for practice, or in a
+    // replay, S saves a paused run to SAVE_FILE and goes back to the menu,
+    // and L there resumes it, paused. Every tick is kept in the history.
+    private static final String SAVE_FILE = "flappy-save.bin";
+    private static final int REWIND_TICKS = 125; // Two seconds
+    private static final int HISTORY_TICKS = 4 * REWIND_TICKS;
+    private static final int SAVE_ASSISTED = 1; // Front end bits stored in the save
+    private static final int SAVE_NIGHT = 2;
+    private final StateHistory history;
+    
+    // Autopilot: A hands the bird to a bot, by default the reachability
+    // solver, whose tables load in the background the first time, or one
+    // given with --brain or --bot. It sees its own copy of the game each tick.
+    // Its flaps are recorded like any other, but a run it flew in, like one
+    // that was rewound, does not set a high score.
+    private volatile Bot bot;
+    private final GameSnapshot botView;
+    private Thread autopilotLoader;
+    private boolean autopilotOn;
+    private boolean assisted;
+    
+    // Pre-built palettes, fonts and labels so drawing does not allocate per frame
+    private static final Color[][] PIPE_COLORS = {
+        {new Color(0, 180, 0), new Color(220, 160, 0), new Color(220, 0, 0)}, // Day: green, orange, red
+        {new Color(0, 100, 0), new Color(150, 120, 0), new Color(150, 0, 0)}  // Night
+    };
+    private static final Color[][] PIPE_CAP_COLORS = {
+        darker(PIPE_COLORS[0]),
+        darker(PIPE_COLORS[1])
+    };
+    private static final Color[] SPEED_COLORS = {Color.GREEN, Color.ORANGE, Color.RED};
+    private static final Color STRIPE_COLOR = new Color(255, 255, 255, 100);
+    private static final Color SCORE_SHADOW_COLOR = new Color(0, 0, 0, 150);
+    private static final Color PAUSE_BUTTON_COLOR = new Color(255, 255, 255, 150);
+    
+    private static final GradientPaint START_OVERLAY = new GradientPaint(
+        0, 0, new Color(0, 0, 0, 180),
+        0, HEIGHT, new Color(0, 0, 0, 100)
+    );
+    private static final GradientPaint PAUSE_OVERLAY = new GradientPaint(
+        0, 0, new Color(0, 0, 0, 200),
+        0, HEIGHT, new Color(0, 0, 50, 150)
+    );
+    private static final GradientPaint GAME_OVER_OVERLAY = new GradientPaint(
+        0, 0, new Color(100, 0, 0, 200),
+        0, HEIGHT, new Color(50, 0, 0, 150)
+    );
+    
+    private static final Font PIPE_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font SCORE_FONT = new Font("Arial", Font.BOLD, 40);
+    private static final Font HUD_FONT = new Font("Arial", Font.PLAIN, 18);
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 52);
+    private static final Font HEADLINE_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font GAME_OVER_SCORE_FONT = new Font("Arial", Font.BOLD, 36);
+    private static final Font MENU_FONT = new Font("Arial", Font.BOLD, 24);
+    private static final Font MENU_NOTE_FONT = new Font("Arial", Font.BOLD, 18);
+    private static final Font SMALL_FONT = new Font("Arial", Font.PLAIN, 16);
+    private static final Font BODY_FONT = new Font("Arial", Font.PLAIN, 24);
+    private static final Font FOOTER_FONT = new Font("Arial", Font.PLAIN, 20);
+    
+    private static final String[] PIPE_SPEED_LABELS = {"SPEED 1", "SPEED 2", "SPEED 3"};
+    private static final String[] HUD_SPEED_LABELS = {"SPEED: SLOW", "SPEED: MEDIUM", "SPEED: FAST"};
+    private static final String[] PAUSE_SPEED_LABELS = {
+        "Current Speed: SLOW", "Current Speed: MEDIUM", "Current Speed: FAST"
+    };
+    private static final String[] MAX_SPEED_LABELS = {
+        "Maximum Speed Reached: SLOW", "Maximum Speed Reached: MEDIUM", "Maximum Speed Reached: FAST"
+    };
+    
+    // Score, HUD and pipe text pre-rendered into a sprite sheet
+    private static final GlyphAtlas GLYPHS = new GlyphAtlas();
+    private static final GlyphAtlas.Glyph[] SCORE_DIGITS = GLYPHS.digits(SCORE_FONT, Color.WHITE, SCORE_SHADOW_COLOR, 2);
+    private static final GlyphAtlas.Glyph[] HUD_DIGITS = GLYPHS.digits(HUD_FONT, Color.WHITE, null, 0);
+    private static final GlyphAtlas.Glyph HIGH_SCORE_GLYPH = GLYPHS.label("High Score: ", HUD_FONT, Color.WHITE);
+    private static final GlyphAtlas.Glyph SOUND_ON_GLYPH = GLYPHS.label("Sound: ON", HUD_FONT, Color.GREEN);
+    private static final GlyphAtlas.Glyph SOUND_OFF_GLYPH = GLYPHS.label("Sound: OFF", HUD_FONT, Color.RED);
+    private static final GlyphAtlas.Glyph HARD_MODE_GLYPH = GLYPHS.label("HARD MODE", HUD_FONT, Color.RED);
+    private static final GlyphAtlas.Glyph NIGHT_MODE_GLYPH = GLYPHS.label("NIGHT MODE", HUD_FONT, Color.BLUE);
+    private static final GlyphAtlas.Glyph AUTOPILOT_GLYPH = GLYPHS.label("AUTOPILOT", HUD_FONT, Color.CYAN);
+    private static final GlyphAtlas.Glyph[] HUD_SPEED_GLYPHS = {
+        GLYPHS.label(HUD_SPEED_LABELS[0], HUD_FONT, SPEED_COLORS[0]),
+        GLYPHS.label(HUD_SPEED_LABELS[1], HUD_FONT, SPEED_COLORS[1]),
+        GLYPHS.label(HUD_SPEED_LABELS[2], HUD_FONT, SPEED_COLORS[2])
+    };
+    private static final GlyphAtlas.Glyph[] PIPE_SPEED_GLYPHS = {
+        GLYPHS.label(PIPE_SPEED_LABELS[0], PIPE_FONT, Color.WHITE),
+        GLYPHS.label(PIPE_SPEED_LABELS[1], PIPE_FONT, Color.WHITE),
+        GLYPHS.label(PIPE_SPEED_LABELS[2], PIPE_FONT, Color.WHITE)
+    };
+    
+    // Game over strings are rebuilt only when the values change
+    private int cachedScore = -1;
+    private String gameOverScoreText;
+    private int cachedHighScore = -1;
+    private String highScoreText;
+    
+    // Widths of fixed labels, measured once
+    private final HashMap<String, Integer> labelWidths = new HashMap<>();
+    
+    // The bird and its speed trail at every tilt, rasterized as poses come up
+    private final BirdSprites birdSprites = new BirdSprites();
     
-    // ========== NEW: Variable Speed System ==========
-    private int speedLevel = 1; // 1=Slow, 2=Medium, 3=Fast
-    private final int[] SPEED_THRESHOLDS = {5, 15}; // Scores to change speed
-    private final double[] BIRD_SPEEDS = {3.0, 4.0, 5.0}; // Pipe movement speeds
-    private final double[] JUMP_MODIFIERS = {1.0, 0.9, 0.8}; // Jump strength modifiers
-    // ================================================
-    
-    // Animation
-    private int birdAnimationFrame = 0;
-    private int animationDelay = 0;
-    private int backgroundOffset = 0;
-    
-    // ========== NEW: Enhanced Background Variables ==========
-    private int cloudOffset = 0;
-    private int starOffset = 0;
-    private ArrayList<Cloud> clouds;
-    private ArrayList<Star> stars;
-    // ========================================================
-    
-    // Sound system
-    private Clip jumpSound;
-    private Clip scoreSound;
-    private Clip hitSound;
-    private Clip selectSound;
-    private Clip speedUpSound;
+    // Pre-rendered scenery, built on first use for each mode
+    private BackgroundLayers dayLayers;
+    private BackgroundLayers nightLayers;
+    
+    // Start, pause and game over overlays, each rasterized once per state.
+    // Nothing moves under these screens, so the finished frame is cached too
+    // and presented with one blit.
+    private static final int PLAYING = -1;
+    private static final int START_SCREEN = 0;
+    private static final int PAUSE_SCREEN = 1;
+    private static final int GAME_OVER_SCREEN = 2;
+    private final CachedLayer[] overlays = new CachedLayer[3];
+    private final long[] overlayKeys = {-1, -1, -1};
+    private CachedLayer frozenFrame;
+    private int frozenScreen = PLAYING;
+    private long frozenSeed;
+    private long frozenTick;
+    private long frozenState;
+    private int frozenTier;
+    private int frozenVersion;
+    
+    // Version of the frozen frame the render target holds; -1 when it must be fully redrawn
+    private int presentedFrame = -1;
+    private boolean statsPresented;
+    private static final Rectangle DEMO_BIRD_AREA = new Rectangle(WIDTH / 2 - 151, 129, 102, 72);
+    private static final int STATS_X = 10;
+    private static final int STATS_Y = 90;
+    
+    // Sound system: ids of pre-decoded effects in the software mixer
+    private static final int JUMP_SOUND = 0;
+    private static final int SCORE_SOUND = 1;
+    private static final int HIT_SOUND = 2;
+    private static final int SELECT_SOUND = 3;
+    private static final int SPEED_UP_SOUND = 4;
+    private static final String[] SOUND_NAMES = {"jump", "score", "hit", "select", "speedup"};
+    private AudioMixer mixer;
     private boolean soundsEnabled = true;
     
-    // High score file
+    // High score file, written in the background
     private static final String HIGH_SCORE_FILE = "flappybird_highscore.dat";
+    private final HighScoreStore highScores = new HighScoreStore(HIGH_SCORE_FILE, stats.io);
     
-    // ========== NEW: Background Object Classes ==========
-    private class Cloud {
-        int x, y;
-        int width, height;
-        int speed;
-        
-        Cloud(int x, int y, int width, int height, int speed) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-            this.speed = speed;
-        }
-    }
-    
-    private class Star {
-        int x, y;
-        int size;
-        float brightness;
-        
-        Star(int x, int y, int size, float brightness) {
-            this.x = x;
-            this.y = y;
-            this.size = size;
-            this.brightness = brightness;
-        }
-    }
-    // ====================================================
-
     public FlappyBird() {
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
         setFocusable(true);
         addKeyListener(this);
+        setIgnoreRepaint(true);
         
-        timer = new Timer(16, this);
-        random = new Random();
+        // Pipe layouts are generated ahead on a background thread
+        sim = new FlappySimulation(new Random(), LevelGenerator.background(FlappySimulation.PIPE_SPACING));
+        snapshots = new SnapshotBuffer(sim);
+        botView = new GameSnapshot(sim);
+        history = new StateHistory(sim, HISTORY_TICKS);
         
-        // ========== NEW: Initialize background objects ==========
-        clouds = new ArrayList<>();
-        stars = new ArrayList<>();
-        initializeClouds();
-        initializeStars();
-        // ========================================================
-        
-        loadHighScore();
+        highScore = highScores.load();
         loadSounds();
         resetGame();
     }
     
-    // ========== NEW: Initialize Clouds ==========
-    private void initializeClouds() {
-        clouds.clear();
-        for (int i = 0; i < 8; i++) {
-            int x = random.nextInt(WIDTH * 2);
-            int y = random.nextInt(HEIGHT / 3);
-            int width = 60 + random.nextInt(80);
-            int height = 20 + random.nextInt(30);
-            int speed = 1 + random.nextInt(3);
-            clouds.add(new Cloud(x, y, width, height, speed));
-        }
-    }
-    
-    // ========== NEW: Initialize Stars ==========
-    private void initializeStars() {
-        stars.clear();
-        if (nightMode) {
-            for (int i = 0; i < 100; i++) {
-                int x = random.nextInt(WIDTH);
-                int y = random.nextInt(HEIGHT / 2);
-                int size = 1 + random.nextInt(3);
-                float brightness = 0.5f + random.nextFloat() * 0.5f;
-                stars.add(new Star(x, y, size, brightness));
-            }
+    private void loadSounds() {
+        // Output buffering in ms; lower is snappier but may crackle on slow machines
+        int latencyMs = Integer.getInteger("flappy.audio.latencyMs", AudioMixer.DEFAULT_LATENCY_MS);
+        mixer = AudioMixer.open(latencyMs);
+        if (mixer == null) {
+            System.out.println("Falling back to system beeps...");
+            soundsEnabled = false;
+            return;
         }
+        
+        mixer.load(JUMP_SOUND, loadSound("jump.wav", 800, 100, 0.3f));
+        mixer.load(SCORE_SOUND, loadSound("score.wav", 1200, 150, 0.3f));
+        mixer.load(HIT_SOUND, loadSound("hit.wav", 300, 500, 0.5f));
+        mixer.load(SELECT_SOUND, loadSound("select.wav", 600, 100, 0.2f));
+        mixer.load(SPEED_UP_SOUND, loadSound("speedup.wav", 1500, 200, 0.4f));
+        
+        System.out.println("Sounds loaded successfully!");
     }
-    // ===========================================
     
-    private void loadHighScore() {
-        try {
-            File file = new File(HIGH_SCORE_FILE);
-            if (file.exists()) {
-                DataInputStream dis = new DataInputStream(new FileInputStream(file));
-                highScore = dis.readInt();
-                dis.close();
-            }
-        } catch (IOException e) {
-            highScore = 0;
+    // Decodes the file, or synthesizes a fallback tone if it is missing or unreadable
+    private short[] loadSound(String filename, int frequency, int duration, float volume) {
+        FlappyEvents.SoundLoad event = new FlappyEvents.SoundLoad();
+        event.begin();
+        
+        File soundFile = new File(filename);
+        short[] pcm = null;
+        if (soundFile.exists()) {
+            pcm = AudioMixer.decode(soundFile);
+        } else {
+            System.out.println("Sound file not found: " + filename);
+        }
+        event.file = filename;
+        event.decoded = pcm != null;
+        if (pcm == null) {
+            pcm = AudioMixer.tone(frequency, duration, volume);
         }
+        event.samples = pcm.length;
+        event.commit();
+        return pcm;
     }
     
-    private void saveHighScore() {
-        try {
-            DataOutputStream dos = new DataOutputStream(new FileOutputStream(HIGH_SCORE_FILE));
-            dos.writeInt(highScore);
-            dos.close();
-        } catch (IOException e) {
-            System.err.println("Could not save high score: " + e.getMessage());
+    // Only enqueues the sound; mixing and output happen on the mixer thread
+    private void playSound(int sound) {
+        FlappyEvents.Sound event = new FlappyEvents.Sound();
+        event.begin();
+        event.sound = SOUND_NAMES[sound];
+        if (!soundsEnabled || mixer == null) {
+            Toolkit.getDefaultToolkit().beep();
+            event.beep = true;
+            event.commit();
+            return;
         }
+        long start = System.nanoTime();
+        mixer.play(sound, 1.0f);
+        stats.sound.record(System.nanoTime() - start);
+        event.commit();
     }
     
-    private void loadSounds() {
-        try {
-            jumpSound = loadSoundFromFile("jump.wav");
-            scoreSound = loadSoundFromFile("score.wav");
-            hitSound = loadSoundFromFile("hit.wav");
-            selectSound = loadSoundFromFile("select.wav");
-            // ========== NEW: Speed up sound ==========
-            speedUpSound = loadSoundFromFile("speedup.wav");
-            // ==========================================
-            
-            if (jumpSound == null) jumpSound = createTone(800, 100, 0.3f);
-            if (scoreSound == null) scoreSound = createTone(1200, 150, 0.3f);
-            if (hitSound == null) hitSound = createTone(300, 500, 0.5f);
-            if (selectSound == null) selectSound = createTone(600, 100, 0.2f);
-            // ========== NEW: Fallback speed sound ==========
-            if (speedUpSound == null) speedUpSound = createTone(1500, 200, 0.4f);
-            // ================================================
+    private void resetGame() {
+        finishRecording();
+        restartRun(seeds.nextLong());
+        gameStarted = false;
+        gamePaused = false;
+        jumpPending = false;
+        assisted = false;
+    }
+    
+    // Hooks for the offscreen benchmark harness in bench/
+    FlappySimulation simulation() {
+        return sim;
+    }
+    
+    void setModes(boolean hardMode, boolean nightMode) {
+        sim.hardMode = hardMode;
+        this.nightMode = nightMode;
+    }
+    
+    void startGame() {
+        gameStarted = true;
+    }
+    
+    // The A key flies this bot instead of the solver
+    void setBot(Bot bot) {
+        this.bot = bot;
+    }
+    
+    // Plays a recorded run back at normal speed; keyboard input is ignored
+    void playReplay(Replay replay) {
+        replayPlayer = new ReplayPlayer(replay);
+        sim.hardMode = replay.hardMode;
+        nightMode = replay.nightMode;
+        restartRun(replay.seed);
+        gameStarted = true;
+    }
+
+    // Resets the simulation to the start of the seed's run in the current
+    // mode, and the history to that state alone, so a rewind never reaches a
+    // run from before the reset
+    private void restartRun(long seed) {
+        runSeed = seed;
+        sim.reset(seed);
+        history.clear();
+        history.record(sim);
+    }
+    
+    // Ends the current recording and writes it out in the background
+    private void finishRecording() {
+        if (recording == null) return;
+        
+        Replay replay = recording;
+        recording = null;
+        replay.end(sim.tick, sim.score, sim.gameOver);
+        Path file = Paths.get(REPLAY_DIR, LocalDateTime.now().format(REPLAY_NAME));
+        new Thread(() -> {
+            try {
+                replay.save(file);
+            } catch (IOException e) {
+                System.err.println("Could not save replay: " + e.getMessage());
+            }
+        }, "replay-writer").start();
+    }
+    
+    private void loadAutopilot() {
+        if (autopilotLoader != null) return;
+        autopilotLoader = new Thread(() ->
+            bot = new Autopilot(ReachabilitySolver.load(Paths.get(ReachabilitySolver.CACHE_FILE))), "solver-loader");
+        autopilotLoader.setDaemon(true);
+        autopilotLoader.start();
+    }
+    
+    // Starts active rendering; must be called once the canvas is displayable.
+    public void start() {
+        createBufferStrategy(2);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stats.dump(Paths.get(STATS_FILE)), "stats-dump"));
+        running = true;
+        
+        // The renderer needs a snapshot before the first tick
+        capture(snapshots.back(), System.nanoTime());
+        snapshots.publish();
+        
+        simThread = new Thread(this::simulate, "game-sim");
+        simThread.start();
+        Thread loop = new Thread(this, "game-loop");
+        loop.start();
+    }
+    
+    // Simulation thread: input, fixed 16 ms ticks, and a snapshot for the
+    // renderer after every pass. Each key is handled before the first tick
+    // that was due after it arrived, so a flap lands on the same tick however
+    // late the thread wakes. Key presses wake it early so menus respond
+    // without waiting for the next tick.
+    private void simulate() {
+        long nextTick = System.nanoTime() + TICK_NANOS;
+        while (running) {
+            long now = System.nanoTime();
+            if (now - nextTick > MAX_FRAME_NANOS) {
+                nextTick = now - MAX_FRAME_NANOS;
+            }
+            while (now - nextTick >= 0) {
+                processInput(nextTick);
+                update();
+                nextTick += TICK_NANOS;
+            }
+            processInput(now);
             
-            System.out.println("Sounds loaded successfully!");
+            capture(snapshots.back(), nextTick - TICK_NANOS);
+            snapshots.publish();
             
-        } catch (Exception e) {
-            System.err.println("Error loading sounds: " + e.getMessage());
-            System.out.println("Falling back to system beeps...");
-            soundsEnabled = false;
+            LockSupport.parkNanos(nextTick - System.nanoTime());
         }
     }
     
-    private Clip loadSoundFromFile(String filename) {
-        try {
-            File soundFile = new File(filename);
-            if (!soundFile.exists()) {
-                System.out.println("Sound file not found: " + filename);
-                return null;
-            }
+    // Copies what the renderer reads; runs on the simulation thread
+    private void capture(GameSnapshot snapshot, long tickNanos) {
+        snapshot.copy(sim);
+        snapshot.gameStarted = gameStarted;
+        snapshot.gamePaused = gamePaused;
+        snapshot.nightMode = nightMode;
+        snapshot.soundsEnabled = soundsEnabled;
+        snapshot.showStats = showStats;
+        snapshot.simulating = isSimulating();
+        snapshot.highScore = highScore;
+        snapshot.runSeed = runSeed;
+        snapshot.autopilot = autopilotOn;
+        snapshot.inputNanos = effectNanos;
+        snapshot.tickNanos = tickNanos;
+    }
+    
+    // Render thread: draws the newest snapshot once per display refresh
+    @Override
+    public void run() {
+        BufferStrategy strategy = getBufferStrategy();
+        long frameNanos = 1_000_000_000L / refreshRate();
+        stats.frame.deadlineNanos = frameNanos;
+        quality.setBudget(frameNanos);
+        target.setBudget(frameNanos);
+        
+        while (running) {
+            long now = System.nanoTime();
+            view = snapshots.latest();
             
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(soundFile);
-            Clip clip = AudioSystem.getClip();
-            clip.open(audioIn);
-            return clip;
+            // Between ticks, draw moving objects part-way to their next position
+            double alpha = view.simulating
+                ? Math.max(0.0, Math.min(1.0, (double) (now - view.tickNanos) / TICK_NANOS)) : 1.0;
+            // Read before render() steps the scale, as the scale reads the tier
+            // before this frame steps it, so one window never moves both
+            boolean fullScale = target.fullScale();
+            render(strategy, alpha);
+            long work = System.nanoTime() - now;
+            stats.frame.record(work);
+            quality.frame(work, fullScale);
             
-        } catch (Exception e) {
-            System.err.println("Error loading sound file " + filename + ": " + e.getMessage());
-            return null;
+            long sleep = now + frameNanos - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
         }
     }
     
-    private Clip createTone(int frequency, int duration, float volume) throws LineUnavailableException {
-        Clip clip = AudioSystem.getClip();
-        AudioFormat format = new AudioFormat(44100, 8, 1, true, true);
-        byte[] buffer = new byte[(int)(format.getFrameRate() * duration / 1000)];
-        
-        for (int i = 0; i < buffer.length; i++) {
-            double angle = i / (format.getFrameRate() / frequency) * 2.0 * Math.PI;
-            buffer[i] = (byte)(Math.sin(angle) * 127.0 * volume);
+    // F11; runs on the event thread. The render target keeps 800x600 and is
+    // scaled to whatever size the window ends up
+    private void toggleFullScreen() {
+        Window window = SwingUtilities.getWindowAncestor(this);
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (window == null || gc == null) return;
+
+        GraphicsDevice device = gc.getDevice();
+        device.setFullScreenWindow(device.getFullScreenWindow() == window ? null : window);
+        requestFocusInWindow();
+    }
+
+    private int refreshRate() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            int hz = gc.getDevice().getDisplayMode().getRefreshRate();
+            if (hz != DisplayMode.REFRESH_RATE_UNKNOWN && hz > 0) {
+                return hz;
+            }
+        }
+        return 60;
+    }
+    
+    private boolean isSimulating() {
+        return gameStarted && !gamePaused && !sim.gameOver
+            && (replayPlayer == null || !replayPlayer.finished(sim.tick));
+    }
+    
+    private void render(BufferStrategy strategy, double alpha) {
+        FlappyEvents.Paint event = new FlappyEvents.Paint();
+        event.begin();
+        long start = System.nanoTime();
+        
+        // Scene into the render target; it keeps its contents between frames
+        // unless video memory was lost or the scale changed
+        boolean drawn;
+        do {
+            Graphics2D g2d = target.begin(getGraphicsConfiguration());
+            try {
+                render(g2d, alpha, target.retained());
+            } finally {
+                g2d.dispose();
+            }
+            drawn = target.end();
+        } while (!drawn);
+        long sceneNanos = System.nanoTime() - start;
+        target.frame(sceneNanos, quality.lowest());
+        
+        // Then stretched over the whole back buffer
+        int windowWidth = getWidth();
+        int windowHeight = getHeight();
+        boolean lost;
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    target.present(g2d, windowWidth, windowHeight);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+            lost = strategy.contentsLost();
+        } while (lost);
+        Toolkit.getDefaultToolkit().sync();
+        long presented = System.nanoTime();
+        stats.render.record(presented - start);
+        
+        // First frame showing the effect of a key press
+        if (view.inputNanos != presentedInputNanos) {
+            presentedInputNanos = view.inputNanos;
+            stats.input.record(presented - view.inputNanos);
         }
         
-        clip.open(format, buffer, 0, buffer.length);
-        return clip;
+        if (event.shouldCommit()) {
+            event.alpha = alpha;
+            event.screen = !view.gameStarted ? "start" : view.gamePaused ? "paused" : view.gameOver ? "game over" : "playing";
+            event.nightMode = view.nightMode;
+            event.contentsLost = lost;
+            event.renderScale = target.scale();
+            event.commit();
+        }
     }
     
-    private void playSound(Clip sound) {
-        if (!soundsEnabled || sound == null) {
-            Toolkit.getDefaultToolkit().beep();
-            return;
+    // Draws the current state directly, without the render thread
+    void render(Graphics2D g2d, double alpha) {
+        if (offscreenView == null) {
+            offscreenView = new GameSnapshot(sim);
+        }
+        capture(offscreenView, 0);
+        view = offscreenView;
+        render(g2d, alpha, false);
+    }
+    
+    // With retained the target still holds the last frame drawn into it, so a
+    // frozen screen only repairs the areas that are drawn over it
+    private void render(Graphics2D g2d, double alpha, boolean retained) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, quality.antialiasing()
+            ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        
+        // Hiding the stats overlay needs the frame underneath redrawn
+        if (view.showStats != statsPresented) {
+            statsPresented = view.showStats;
+            presentedFrame = -1;
         }
         
-        try {
-            if (sound.isRunning()) {
-                sound.stop();
+        int screen = currentScreen();
+        if (screen == PLAYING) {
+            presentedFrame = -1;
+            drawScene(g2d, alpha);
+        } else {
+            Image frame = frozenFrame(screen);
+            if (retained && presentedFrame == frozenVersion) {
+                if (screen == START_SCREEN) {
+                    restore(g2d, frame, DEMO_BIRD_AREA.x, DEMO_BIRD_AREA.y, DEMO_BIRD_AREA.width, DEMO_BIRD_AREA.height);
+                }
+                if (view.showStats) {
+                    restore(g2d, frame, STATS_X, STATS_Y, FrameStats.OVERLAY_WIDTH, stats.overlayHeight);
+                }
+            } else {
+                g2d.drawImage(frame, 0, 0, null);
+                presentedFrame = frozenVersion;
             }
-            sound.setFramePosition(0);
-            sound.start();
-        } catch (Exception e) {
-            System.err.println("Error playing sound: " + e.getMessage());
-            Toolkit.getDefaultToolkit().beep();
+            
+            if (screen == START_SCREEN) {
+                // Draw demo bird with speed colors
+                int demoBirdY = 150 + (int)(Math.sin(System.currentTimeMillis() * 0.005) * 20);
+                drawDemoBird(g2d, WIDTH / 2 - 150, demoBirdY);
+            }
+        }
+        
+        if (view.showStats) {
+            stats.drawOverlay(g2d, STATS_X, STATS_Y);
         }
     }
     
-    private void resetGame() {
-        birdY = HEIGHT / 2;
-        birdVelocity = 0;
-        pipes = new ArrayList<>();
-        score = 0;
-        gameOver = false;
-        gameStarted = false;
-        gamePaused = false;
-        birdAnimationFrame = 0;
-        backgroundOffset = 0;
-        cloudOffset = 0;
-        starOffset = 0;
-        
-        // ========== NEW: Reset speed level ==========
-        speedLevel = 1;
-        // ===========================================
+    private int currentScreen() {
+        if (!view.gameStarted) return START_SCREEN;
+        if (view.gamePaused) return PAUSE_SCREEN;
+        if (view.gameOver) return GAME_OVER_SCREEN;
+        return PLAYING;
+    }
+    
+    // Padded by a pixel so antialiased edges are covered at fractional render scales
+    private void restore(Graphics2D g2d, Image frame, int x, int y, int width, int height) {
+        x--;
+        y--;
+        width += 2;
+        height += 2;
+        g2d.drawImage(frame, x, y, x + width, y + height, x, y, x + width, y + height, null);
+    }
+    
+    // The scene and overlay of a static screen, re-rendered only when something on it changes
+    private Image frozenFrame(int screen) {
+        if (frozenFrame == null) {
+            frozenFrame = new CachedLayer(getGraphicsConfiguration(), WIDTH, HEIGHT, Transparency.OPAQUE) {
+                @Override
+                void paint(Graphics2D g2d) {
+                    drawScene(g2d, 1.0);
+                    g2d.drawImage(overlay(frozenScreen), 0, 0, null);
+                }
+            };
+        }
         
-        // Create initial pipes
-        for (int i = 0; i < 3; i++) {
-            addPipe(WIDTH + i * PIPE_SPACING);
+        long state = overlayKey(screen) << 4 | (view.autopilot ? 8 : 0) | (view.nightMode ? 4 : 0) | (view.hardMode ? 2 : 0) | (view.soundsEnabled ? 1 : 0);
+        // The tier decides the stars, twinkle, clouds and stripes drawn into the scene
+        int tier = quality.tier();
+        if (screen != frozenScreen || view.runSeed != frozenSeed || view.tick != frozenTick || state != frozenState
+            || tier != frozenTier) {
+            frozenScreen = screen;
+            frozenSeed = view.runSeed;
+            frozenTick = view.tick;
+            frozenState = state;
+            frozenTier = tier;
+            frozenFrame.invalidate();
+            frozenVersion++;
+        }
+        return frozenFrame.image();
+    }
+    
+    private Image overlay(int screen) {
+        if (overlays[screen] == null) {
+            overlays[screen] = new CachedLayer(getGraphicsConfiguration(), WIDTH, HEIGHT, Transparency.TRANSLUCENT) {
+                @Override
+                void paint(Graphics2D g2d) {
+                    if (screen == START_SCREEN) {
+                        drawStartScreen(g2d);
+                    } else if (screen == PAUSE_SCREEN) {
+                        drawPauseScreen(g2d);
+                    } else {
+                        drawGameOverScreen(g2d);
+                    }
+                }
+            };
         }
         
-        // ========== NEW: Reinitialize background objects ==========
-        initializeClouds();
-        initializeStars();
-        // ========================================================
+        long key = overlayKey(screen);
+        if (key != overlayKeys[screen]) {
+            overlayKeys[screen] = key;
+            overlays[screen].invalidate();
+        }
+        return overlays[screen].image();
     }
     
-    private void addPipe(int x) {
-        int minHeight = hardMode ? 50 : 100;
-        int maxHeight = HEIGHT - PIPE_GAP - GROUND_HEIGHT - (hardMode ? 50 : 100);
-        int pipeHeight = random.nextInt(maxHeight - minHeight) + minHeight;
-        pipes.add(new Pipe(x, pipeHeight));
+    // Everything an overlay's contents depend on
+    private long overlayKey(int screen) {
+        switch (screen) {
+            case START_SCREEN:
+                return (view.hardMode ? 4 : 0) | (view.nightMode ? 2 : 0) | (view.soundsEnabled ? 1 : 0);
+            case PAUSE_SCREEN:
+                return view.speedLevel;
+            default:
+                return (long) view.score << 34 | (long) view.highScore << 2 | (view.speedLevel - 1);
+        }
     }
     
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
+    // Background, pipes, ground, bird and HUD
+    private void drawScene(Graphics2D g2d, double alpha) {
         // Draw background
+        long start = System.nanoTime();
         drawBackground(g2d);
+        long backgroundDone = System.nanoTime();
+        stats.background.record(backgroundDone - start);
         
         // Draw pipes
-        for (Pipe pipe : pipes) {
-            drawPipe(g2d, pipe);
+        for (int i = 0; i < view.pipeCount; i++) {
+            int prevX = view.pipePrevX[i];
+            drawPipe(g2d, (int) Math.round(prevX + (view.pipeX[i] - prevX) * alpha), view.pipeHeight[i]);
         }
+        stats.pipes.record(System.nanoTime() - backgroundDone);
         
         // Draw ground
         drawGround(g2d);
         
         // Draw bird
-        if (gameStarted && !gameOver) {
-            drawBird(g2d);
+        if (view.gameStarted && !view.gameOver) {
+            drawBird(g2d, view.prevBirdY + (view.birdY - view.prevBirdY) * alpha);
         }
         
         // Draw UI
         drawUI(g2d);
-        
-        // Draw appropriate screen
-        if (!gameStarted) {
-            drawStartScreen(g2d);
-        } else if (gamePaused) {
-            drawPauseScreen(g2d);
-        } else if (gameOver) {
-            drawGameOverScreen(g2d);
+    }
+    
+    private BackgroundLayers backgroundLayers() {
+        if (view.nightMode) {
+            if (nightLayers == null) {
+                nightLayers = new BackgroundLayers(true, getGraphicsConfiguration());
+            }
+            return nightLayers;
+        }
+        if (dayLayers == null) {
+            dayLayers = new BackgroundLayers(false, getGraphicsConfiguration());
         }
+        return dayLayers;
     }
     
     private void drawBackground(Graphics2D g2d) {
-        if (nightMode) {
-            // Enhanced night background with gradient
-            GradientPaint nightGradient = new GradientPaint(
-                0, 0, new Color(10, 10, 40), 
-                0, HEIGHT/2, new Color(15, 15, 60)
-            );
-            g2d.setPaint(nightGradient);
-            g2d.fillRect(0, 0, WIDTH, HEIGHT/2);
-            
-            // Draw stars with varying brightness
-            for (Star star : stars) {
-                int alpha = (int)(255 * star.brightness);
-                g2d.setColor(new Color(255, 255, 255, alpha));
-                g2d.fillOval(star.x, star.y, star.size, star.size);
-                
-                // Make some stars twinkle
-                if (random.nextInt(100) < 5) {
-                    g2d.setColor(new Color(255, 255, 255, alpha + 50));
-                    g2d.fillOval(star.x - 1, star.y - 1, star.size + 2, star.size + 2);
-                }
-            }
-            
-            // Enhanced moon with craters
-            g2d.setColor(new Color(230, 230, 230));
-            g2d.fillOval(650, 50, 70, 70);
-            g2d.setColor(new Color(210, 210, 210));
-            g2d.fillOval(660, 65, 15, 15);
-            g2d.fillOval(680, 80, 10, 10);
-            g2d.fillOval(665, 90, 8, 8);
-            
-        } else {
-            // Enhanced day background with gradient sky
-            GradientPaint skyGradient = new GradientPaint(
-                0, 0, new Color(100, 180, 255), 
-                0, HEIGHT/2, new Color(176, 226, 255)
-            );
-            g2d.setPaint(skyGradient);
-            g2d.fillRect(0, 0, WIDTH, HEIGHT/2);
-            
+        BackgroundLayers layers = backgroundLayers();
+        
+        // Sky gradient, sun or moon and stars come from the cached sky layer
+        layers.drawSky(g2d, quality.stars(BackgroundLayers.STAR_COUNT), quality.starTwinkle());
+        
+        if (!view.nightMode && quality.clouds()) {
             // Draw moving clouds
-            for (Cloud cloud : clouds) {
-                // Main cloud
-                g2d.setColor(new Color(255, 255, 255, 200));
-                g2d.fillOval(cloud.x, cloud.y, cloud.width, cloud.height);
-                g2d.fillOval(cloud.x + cloud.width/3, cloud.y - cloud.height/3, 
-                            cloud.width * 2/3, cloud.height);
-                g2d.fillOval(cloud.x + cloud.width * 2/3, cloud.y, 
-                            cloud.width/2, cloud.height);
-                
-                // Cloud shadow
-                g2d.setColor(new Color(255, 255, 255, 100));
-                g2d.fillOval(cloud.x + 5, cloud.y + 5, cloud.width, cloud.height);
+            for (int i = 0; i < view.cloudCount; i++) {
+                layers.drawCloud(g2d, view.cloudX[i], view.cloudY[i], view.cloudWidth[i], view.cloudHeight[i]);
             }
-            
-            // Sun
-            g2d.setColor(new Color(255, 255, 200));
-            g2d.fillOval(700, 30, 60, 60);
-            g2d.setColor(Color.YELLOW);
-            g2d.fillOval(705, 35, 50, 50);
-        }
-        
-        // Enhanced forest with varying tree colors
-        for (int i = 0; i < 25; i++) {
-            int x = (i * 100) % WIDTH;
-            int height = 60 + random.nextInt(140);
-            int width = 30 + random.nextInt(20);
-            
-            // Tree trunk
-            Color trunkColor = nightMode ? 
-                new Color(80 + random.nextInt(40), 50 + random.nextInt(30), 20 + random.nextInt(20)) :
-                new Color(101 + random.nextInt(50), 67 + random.nextInt(40), 33 + random.nextInt(20));
-            g2d.setColor(trunkColor);
-            g2d.fillRect(x + width/2 - 5, HEIGHT/2 - height, 10, height);
-            
-            // Tree leaves
-            Color leafColor = nightMode ?
-                new Color(0, 60 + random.nextInt(40), 0) :
-                new Color(30 + random.nextInt(40), 120 + random.nextInt(50), 30 + random.nextInt(40));
-            g2d.setColor(leafColor);
-            g2d.fillOval(x, HEIGHT/2 - height - 30, width, 60);
-            g2d.fillOval(x - 10, HEIGHT/2 - height - 10, width + 20, 50);
-        }
-    }
-    
-    private void drawPipe(Graphics2D g2d, Pipe pipe) {
-        // Pipe color based on speed level
-        Color pipeColor;
-        switch(speedLevel) {
-            case 1: // Slow - Green
-                pipeColor = nightMode ? new Color(0, 100, 0) : new Color(0, 180, 0);
-                break;
-            case 2: // Medium - Yellow/Orange
-                pipeColor = nightMode ? new Color(150, 120, 0) : new Color(220, 160, 0);
-                break;
-            case 3: // Fast - Red
-                pipeColor = nightMode ? new Color(150, 0, 0) : new Color(220, 0, 0);
-                break;
-            default:
-                pipeColor = new Color(0, 180, 0);
         }
         
-        Color pipeCapColor = new Color(
-            Math.max(0, pipeColor.getRed() - 40),
-            Math.max(0, pipeColor.getGreen() - 40),
-            Math.max(0, pipeColor.getBlue() - 40)
-        );
+        // Forest scrolls at half the ground speed for parallax
+        layers.drawForest(g2d, view.backgroundOffset);
+    }
+    
+    private void drawPipe(Graphics2D g2d, int pipeX, int pipeHeight) {
+        // Pipe color based on speed level: green, orange, red
+        int palette = view.nightMode ? 1 : 0;
+        Color pipeColor = PIPE_COLORS[palette][view.speedLevel - 1];
+        Color pipeCapColor = PIPE_CAP_COLORS[palette][view.speedLevel - 1];
         
         // Top pipe with speed indicator pattern
         g2d.setColor(pipeColor);
-        g2d.fillRect(pipe.x, 0, PIPE_WIDTH, pipe.height);
+        g2d.fillRect(pipeX, 0, PIPE_WIDTH, pipeHeight);
         
         // Draw speed stripes on pipes
-        g2d.setColor(new Color(255, 255, 255, 100));
-        for (int i = 0; i < pipe.height; i += 20) {
-            g2d.fillRect(pipe.x, i, 10, 10);
+        boolean stripes = quality.pipeStripes();
+        if (stripes) {
+            g2d.setColor(STRIPE_COLOR);
+            for (int i = 0; i < pipeHeight; i += 20) {
+                g2d.fillRect(pipeX, i, 10, 10);
+            }
         }
         
         // Bottom pipe
-        int bottomPipeY = pipe.height + (hardMode ? PIPE_GAP - 50 : PIPE_GAP);
+        int bottomPipeY = pipeHeight + FlappySimulation.gap(view.hardMode);
         g2d.setColor(pipeColor);
-        g2d.fillRect(pipe.x, bottomPipeY, PIPE_WIDTH, HEIGHT - bottomPipeY - GROUND_HEIGHT);
+        g2d.fillRect(pipeX, bottomPipeY, PIPE_WIDTH, HEIGHT - bottomPipeY - GROUND_HEIGHT);
         
         // Speed stripes on bottom pipe
-        g2d.setColor(new Color(255, 255, 255, 100));
-        for (int i = bottomPipeY; i < HEIGHT - GROUND_HEIGHT; i += 20) {
-            g2d.fillRect(pipe.x, i, 10, 10);
+        if (stripes) {
+            g2d.setColor(STRIPE_COLOR);
+            for (int i = bottomPipeY; i < HEIGHT - GROUND_HEIGHT; i += 20) {
+                g2d.fillRect(pipeX, i, 10, 10);
+            }
         }
         
         // Pipe caps
         g2d.setColor(pipeCapColor);
-        g2d.fillRect(pipe.x - 5, pipe.height - 20, PIPE_WIDTH + 10, 20);
-        g2d.fillRect(pipe.x - 5, bottomPipeY, PIPE_WIDTH + 10, 20);
+        g2d.fillRect(pipeX - 5, pipeHeight - 20, PIPE_WIDTH + 10, 20);
+        g2d.fillRect(pipeX - 5, bottomPipeY, PIPE_WIDTH + 10, 20);
         
         // Speed level indicator on pipes
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 14));
-        String speedText = "SPEED " + speedLevel;
-        g2d.drawString(speedText, pipe.x + 15, pipe.height - 5);
-        g2d.drawString(speedText, pipe.x + 15, bottomPipeY + 15);
+        GlyphAtlas.Glyph speedText = PIPE_SPEED_GLYPHS[view.speedLevel - 1];
+        GLYPHS.draw(g2d, speedText, pipeX + 15, pipeHeight - 5);
+        GLYPHS.draw(g2d, speedText, pipeX + 15, bottomPipeY + 15);
     }
     
     private void drawGround(Graphics2D g2d) {
-        // Ground with gradient
-        GradientPaint groundGradient = new GradientPaint(
-            0, HEIGHT - GROUND_HEIGHT, new Color(120, 60, 20),
-            0, HEIGHT, new Color(160, 100, 50)
-        );
-        g2d.setPaint(groundGradient);
-        g2d.fillRect(0, HEIGHT - GROUND_HEIGHT, WIDTH, GROUND_HEIGHT);
-        
-        // Grass with pattern
-        g2d.setColor(nightMode ? new Color(0, 80, 0) : new Color(40, 160, 40));
-        for (int i = 0; i < WIDTH; i += 10) {
-            int height = 5 + random.nextInt(10);
-            g2d.fillRect(i, HEIGHT - GROUND_HEIGHT, 3, height);
-        }
-        
-        // Ground details
-        g2d.setColor(new Color(140, 90, 40));
-        for (int i = 0; i < WIDTH; i += 15) {
-            g2d.fillOval((i + backgroundOffset) % WIDTH, HEIGHT - GROUND_HEIGHT + 20, 8, 4);
-        }
+        backgroundLayers().drawGround(g2d, view.backgroundOffset);
     }
     
-    private void drawBird(Graphics2D g2d) {
+    private void drawBird(Graphics2D g2d, double birdY) {
         int birdX = WIDTH / 4 - BIRD_WIDTH / 2;
         
-        // Calculate rotation based on velocity
-        double rotation = Math.toRadians(Math.min(30, Math.max(-90, birdVelocity * 3)));
-        
-        AffineTransform oldTransform = g2d.getTransform();
-        g2d.rotate(rotation, birdX + BIRD_WIDTH / 2, birdY + BIRD_HEIGHT / 2);
-        
-        // Bird body color based on speed
-        Color birdColor;
-        switch(speedLevel) {
-            case 1: // Slow - Yellow
-                birdColor = Color.YELLOW;
-                break;
-            case 2: // Medium - Orange
-                birdColor = Color.ORANGE;
-                break;
-            case 3: // Fast - Red
-                birdColor = Color.RED;
-                break;
-            default:
-                birdColor = Color.YELLOW;
+        // Tilted with velocity, colored by speed, one pre-rendered blit per pose
+        birdSprites.draw(g2d, birdX, (int) birdY, view.birdVelocity, view.speedLevel, view.birdAnimationFrame,
+            quality.speedTrail());
+    }
+    
+    private void updateScoreText() {
+        if (view.score != cachedScore) {
+            cachedScore = view.score;
+            gameOverScoreText = "Score: " + cachedScore;
         }
-        
-        g2d.setColor(birdColor);
-        g2d.fillOval(birdX, (int)birdY - BIRD_HEIGHT / 2, BIRD_WIDTH, BIRD_HEIGHT);
-        
-        // Wing with faster animation at higher speeds
-        g2d.setColor(new Color(200, 100, 0));
-        int wingSpeedMultiplier = speedLevel; // Faster wing flap at higher speeds
-        int wingOffset = (birdAnimationFrame * wingSpeedMultiplier) % 3;
-        wingOffset = wingOffset == 1 ? 3 : (wingOffset == 2 ? -3 : 0);
-        g2d.fillOval(birdX + 10, (int)birdY - BIRD_HEIGHT / 2 + 10 + wingOffset, 15, 10);
-        
-        // Eye
-        g2d.setColor(Color.BLACK);
-        g2d.fillOval(birdX + BIRD_WIDTH - 15, (int)birdY - BIRD_HEIGHT / 2 + 10, 8, 8);
-        g2d.setColor(Color.WHITE);
-        g2d.fillOval(birdX + BIRD_WIDTH - 14, (int)birdY - BIRD_HEIGHT / 2 + 11, 3, 3);
-        
-        // Beak
-        g2d.setColor(new Color(255, 140, 0));
-        int[] xPoints = {birdX + BIRD_WIDTH - 5, birdX + BIRD_WIDTH + 5, birdX + BIRD_WIDTH - 5};
-        int[] yPoints = {(int)birdY, (int)birdY + 4, (int)birdY + 8};
-        g2d.fillPolygon(xPoints, yPoints, 3);
-        
-        // Speed trail effect
-        if (speedLevel > 1) {
-            g2d.setColor(new Color(255, 255, 0, 100));
-            for (int i = 0; i < speedLevel * 2; i++) {
-                g2d.fillOval(birdX - i * 5 - 10, (int)birdY - BIRD_HEIGHT / 4, 
-                           BIRD_WIDTH/2, BIRD_HEIGHT/2);
-            }
+        if (view.highScore != cachedHighScore) {
+            cachedHighScore = view.highScore;
+            highScoreText = "High Score: " + cachedHighScore;
         }
-        
-        g2d.setTransform(oldTransform);
+    }
+    
+    // X position that centers a fixed label in the current font
+    private int centeredX(Graphics2D g2d, String label) {
+        Integer width = labelWidths.get(label);
+        if (width == null) {
+            width = g2d.getFontMetrics().stringWidth(label);
+            labelWidths.put(label, width);
+        }
+        return WIDTH / 2 - width / 2;
     }
     
     private void drawUI(Graphics2D g2d) {
-        // Score with glowing effect
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 40));
-        String scoreText = "" + score;
-        
-        // Score shadow
-        g2d.setColor(new Color(0, 0, 0, 150));
-        g2d.drawString(scoreText, WIDTH / 2 - g2d.getFontMetrics().stringWidth(scoreText) / 2 + 2, 52);
-        
-        // Main score
-        g2d.setColor(Color.WHITE);
-        g2d.drawString(scoreText, WIDTH / 2 - g2d.getFontMetrics().stringWidth(scoreText) / 2, 50);
+        // Score with its shadow baked into the digit glyphs
+        int scoreWidth = GLYPHS.numberWidth(SCORE_DIGITS, view.score);
+        GLYPHS.drawNumber(g2d, SCORE_DIGITS, view.score, WIDTH / 2 - scoreWidth / 2, 50);
         
         // High score
-        g2d.setFont(new Font("Arial", Font.PLAIN, 18));
-        g2d.drawString("High Score: " + highScore, 20, 30);
+        GLYPHS.draw(g2d, HIGH_SCORE_GLYPH, 20, 30);
+        GLYPHS.drawNumber(g2d, HUD_DIGITS, view.highScore, 20 + HIGH_SCORE_GLYPH.advance, 30);
         
         // Sound indicator
-        g2d.setColor(soundsEnabled ? Color.GREEN : Color.RED);
-        g2d.drawString("Sound: " + (soundsEnabled ? "ON" : "OFF"), 20, 50);
-        
-        // ========== NEW: Speed Level Indicator ==========
-        String speedText = "SPEED: ";
-        switch(speedLevel) {
-            case 1:
-                speedText += "SLOW";
-                g2d.setColor(Color.GREEN);
-                break;
-            case 2:
-                speedText += "MEDIUM";
-                g2d.setColor(Color.ORANGE);
-                break;
-            case 3:
-                speedText += "FAST";
-                g2d.setColor(Color.RED);
-                break;
-        }
-        g2d.drawString(speedText, 20, 70);
-        // ================================================
+        GLYPHS.draw(g2d, view.soundsEnabled ? SOUND_ON_GLYPH : SOUND_OFF_GLYPH, 20, 50);
+        
+        // Speed level indicator
+        GLYPHS.draw(g2d, HUD_SPEED_GLYPHS[view.speedLevel - 1], 20, 70);
         
         // Mode indicators
-        if (hardMode) {
-            g2d.setColor(Color.RED);
-            g2d.drawString("HARD MODE", WIDTH - 120, 30);
+        if (view.hardMode) {
+            GLYPHS.draw(g2d, HARD_MODE_GLYPH, WIDTH - 120, 30);
         }
-        if (nightMode) {
-            g2d.setColor(Color.BLUE);
-            g2d.drawString("NIGHT MODE", WIDTH - 120, 50);
+        if (view.nightMode) {
+            GLYPHS.draw(g2d, NIGHT_MODE_GLYPH, WIDTH - 120, 50);
+        }
+        if (view.autopilot) {
+            GLYPHS.draw(g2d, AUTOPILOT_GLYPH, WIDTH - 150, 100);
         }
         
         // Speed level bar
         g2d.setColor(Color.GRAY);
         g2d.fillRect(WIDTH - 150, 70, 100, 10);
-        g2d.setColor(speedLevel >= 1 ? Color.GREEN : Color.DARK_GRAY);
+        g2d.setColor(view.speedLevel >= 1 ? Color.GREEN : Color.DARK_GRAY);
         g2d.fillRect(WIDTH - 150, 70, 33, 10);
-        g2d.setColor(speedLevel >= 2 ? Color.ORANGE : Color.DARK_GRAY);
+        g2d.setColor(view.speedLevel >= 2 ? Color.ORANGE : Color.DARK_GRAY);
         g2d.fillRect(WIDTH - 117, 70, 33, 10);
-        g2d.setColor(speedLevel >= 3 ? Color.RED : Color.DARK_GRAY);
+        g2d.setColor(view.speedLevel >= 3 ? Color.RED : Color.DARK_GRAY);
         g2d.fillRect(WIDTH - 84, 70, 33, 10);
         
         // Pause button
-        if (gameStarted && !gameOver) {
-            g2d.setColor(new Color(255, 255, 255, 150));
+        if (view.gameStarted && !view.gameOver) {
+            g2d.setColor(PAUSE_BUTTON_COLOR);
             g2d.fillRoundRect(WIDTH - 50, 10, 40, 40, 10, 10);
             g2d.setColor(Color.BLACK);
             g2d.fillRect(WIDTH - 40, 20, 5, 20);
@@ -607,65 +842,49 @@ public class FlappyBird extends JPanel implements ActionListener, KeyListener {
     
     private void drawStartScreen(Graphics2D g2d) {
         // Enhanced semi-transparent overlay with gradient
-        GradientPaint overlayGradient = new GradientPaint(
-            0, 0, new Color(0, 0, 0, 180),
-            0, HEIGHT, new Color(0, 0, 0, 100)
-        );
-        g2d.setPaint(overlayGradient);
+        g2d.setPaint(START_OVERLAY);
         g2d.fillRect(0, 0, WIDTH, HEIGHT);
         
         // Title with shadow
         g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font("Arial", Font.BOLD, 52));
+        g2d.setFont(TITLE_FONT);
         String title = "FLAPPY BIRD PRO";
-        g2d.drawString(title, WIDTH / 2 - g2d.getFontMetrics().stringWidth(title) / 2 + 3, 153);
+        int titleX = centeredX(g2d, title);
+        g2d.drawString(title, titleX + 3, 153);
         
         g2d.setColor(Color.YELLOW);
-        g2d.drawString(title, WIDTH / 2 - g2d.getFontMetrics().stringWidth(title) / 2, 150);
+        g2d.drawString(title, titleX, 150);
         
         // Menu options with better styling
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 24));
+        g2d.setFont(MENU_FONT);
         
         int menuY = 250;
         g2d.drawString("1. START GAME", WIDTH / 2 - 100, menuY);
-        g2d.drawString("2. HARD MODE: " + (hardMode ? "ON" : "OFF"), WIDTH / 2 - 100, menuY + 40);
-        g2d.drawString("3. NIGHT MODE: " + (nightMode ? "ON" : "OFF"), WIDTH / 2 - 100, menuY + 80);
-        g2d.drawString("4. SOUND: " + (soundsEnabled ? "ON" : "OFF"), WIDTH / 2 - 100, menuY + 120);
+        g2d.drawString(view.hardMode ? "2. HARD MODE: ON" : "2. HARD MODE: OFF", WIDTH / 2 - 100, menuY + 40);
+        g2d.drawString(view.nightMode ? "3. NIGHT MODE: ON" : "3. NIGHT MODE: OFF", WIDTH / 2 - 100, menuY + 80);
+        g2d.drawString(view.soundsEnabled ? "4. SOUND: ON" : "4. SOUND: OFF", WIDTH / 2 - 100, menuY + 120);
         
-        // ========== NEW: Speed System Explanation ==========
+        // Speed system explanation
         g2d.setColor(Color.CYAN);
-        g2d.setFont(new Font("Arial", Font.BOLD, 18));
+        g2d.setFont(MENU_NOTE_FONT);
         g2d.drawString("SPEED INCREASES WITH SCORE!", WIDTH / 2 - 140, menuY + 160);
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.PLAIN, 16));
+        g2d.setFont(SMALL_FONT);
         g2d.drawString("Score 5+ : Medium Speed", WIDTH / 2 - 90, menuY + 190);
         g2d.drawString("Score 15+: Fast Speed", WIDTH / 2 - 90, menuY + 210);
-        // ===================================================
         
         // Instructions
-        g2d.setFont(new Font("Arial", Font.PLAIN, 18));
+        g2d.setFont(HUD_FONT);
         g2d.drawString("Press SPACE to jump", WIDTH / 2 - 80, menuY + 250);
         g2d.drawString("Press P to pause", WIDTH / 2 - 60, menuY + 280);
         g2d.drawString("Press R to restart", WIDTH / 2 - 65, menuY + 310);
-        
-        // Draw demo bird with speed colors
-        int demoBirdY = 150 + (int)(Math.sin(System.currentTimeMillis() * 0.005) * 20);
-        drawDemoBird(g2d, WIDTH / 2 - 150, demoBirdY);
     }
     
     private void drawDemoBird(Graphics2D g2d, int x, int y) {
         // Demo bird showing speed colors
         for (int i = 0; i < 3; i++) {
-            Color demoColor;
-            switch(i) {
-                case 0: demoColor = Color.GREEN; break;
-                case 1: demoColor = Color.ORANGE; break;
-                case 2: demoColor = Color.RED; break;
-                default: demoColor = Color.YELLOW;
-            }
-            
-            g2d.setColor(demoColor);
+            g2d.setColor(SPEED_COLORS[i]);
             g2d.fillOval(x + i * 30, y, BIRD_WIDTH, BIRD_HEIGHT);
             
             g2d.setColor(Color.BLACK);
@@ -675,261 +894,315 @@ public class FlappyBird extends JPanel implements ActionListener, KeyListener {
     
     private void drawPauseScreen(Graphics2D g2d) {
         // Enhanced pause screen
-        GradientPaint pauseGradient = new GradientPaint(
-            0, 0, new Color(0, 0, 0, 200),
-            0, HEIGHT, new Color(0, 0, 50, 150)
-        );
-        g2d.setPaint(pauseGradient);
+        g2d.setPaint(PAUSE_OVERLAY);
         g2d.fillRect(0, 0, WIDTH, HEIGHT);
         
         g2d.setColor(Color.YELLOW);
-        g2d.setFont(new Font("Arial", Font.BOLD, 48));
+        g2d.setFont(HEADLINE_FONT);
         String paused = "GAME PAUSED";
-        g2d.drawString(paused, WIDTH / 2 - g2d.getFontMetrics().stringWidth(paused) / 2, HEIGHT / 2 - 50);
+        g2d.drawString(paused, centeredX(g2d, paused), HEIGHT / 2 - 50);
         
         // Current speed display
         g2d.setColor(Color.CYAN);
-        g2d.setFont(new Font("Arial", Font.BOLD, 24));
-        String speedStatus = "Current Speed: ";
-        switch(speedLevel) {
-            case 1: speedStatus += "SLOW"; break;
-            case 2: speedStatus += "MEDIUM"; break;
-            case 3: speedStatus += "FAST"; break;
-        }
-        g2d.drawString(speedStatus, WIDTH / 2 - g2d.getFontMetrics().stringWidth(speedStatus) / 2, HEIGHT / 2);
+        g2d.setFont(MENU_FONT);
+        String speedStatus = PAUSE_SPEED_LABELS[view.speedLevel - 1];
+        g2d.drawString(speedStatus, centeredX(g2d, speedStatus), HEIGHT / 2);
         
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.PLAIN, 24));
+        g2d.setFont(BODY_FONT);
         g2d.drawString("Press P to resume", WIDTH / 2 - 100, HEIGHT / 2 + 50);
         g2d.drawString("Press R to restart", WIDTH / 2 - 100, HEIGHT / 2 + 90);
         g2d.drawString("Press M for menu", WIDTH / 2 - 100, HEIGHT / 2 + 130);
     }
     
     private void drawGameOverScreen(Graphics2D g2d) {
+        updateScoreText();
+        
         // Enhanced game over screen
-        GradientPaint gameOverGradient = new GradientPaint(
-            0, 0, new Color(100, 0, 0, 200),
-            0, HEIGHT, new Color(50, 0, 0, 150)
-        );
-        g2d.setPaint(gameOverGradient);
+        g2d.setPaint(GAME_OVER_OVERLAY);
         g2d.fillRect(0, 0, WIDTH, HEIGHT);
         
         g2d.setColor(Color.RED);
-        g2d.setFont(new Font("Arial", Font.BOLD, 48));
+        g2d.setFont(HEADLINE_FONT);
         String gameOverText = "GAME OVER";
-        g2d.drawString(gameOverText, WIDTH / 2 - g2d.getFontMetrics().stringWidth(gameOverText) / 2, HEIGHT / 2 - 80);
+        g2d.drawString(gameOverText, centeredX(g2d, gameOverText), HEIGHT / 2 - 80);
         
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 36));
-        g2d.drawString("Score: " + score, WIDTH / 2 - 70, HEIGHT / 2 - 20);
-        g2d.drawString("High Score: " + highScore, WIDTH / 2 - 100, HEIGHT / 2 + 20);
+        g2d.setFont(GAME_OVER_SCORE_FONT);
+        g2d.drawString(gameOverScoreText, WIDTH / 2 - 70, HEIGHT / 2 - 20);
+        g2d.drawString(highScoreText, WIDTH / 2 - 100, HEIGHT / 2 + 20);
         
         // Speed achieved
-        g2d.setFont(new Font("Arial", Font.PLAIN, 24));
-        String speedAchieved = "Maximum Speed Reached: ";
-        switch(speedLevel) {
-            case 1: speedAchieved += "SLOW"; break;
-            case 2: speedAchieved += "MEDIUM"; break;
-            case 3: speedAchieved += "FAST"; break;
-        }
-        g2d.drawString(speedAchieved, WIDTH / 2 - g2d.getFontMetrics().stringWidth(speedAchieved) / 2, HEIGHT / 2 + 60);
+        g2d.setFont(BODY_FONT);
+        String speedAchieved = MAX_SPEED_LABELS[view.speedLevel - 1];
+        g2d.drawString(speedAchieved, centeredX(g2d, speedAchieved), HEIGHT / 2 + 60);
         
-        g2d.setFont(new Font("Arial", Font.PLAIN, 20));
+        g2d.setFont(FOOTER_FONT);
         g2d.drawString("Press R to play again", WIDTH / 2 - 100, HEIGHT / 2 + 100);
         g2d.drawString("Press M for main menu", WIDTH / 2 - 110, HEIGHT / 2 + 130);
     }
     
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        if (!gameStarted || gameOver || gamePaused) return;
-        
-        // Update animations
-        animationDelay++;
-        if (animationDelay >= 5) {
-            birdAnimationFrame = (birdAnimationFrame + 1) % 3;
-            animationDelay = 0;
-        }
-        
-        // Scroll background
-        backgroundOffset = (backgroundOffset + 1) % WIDTH;
-        
-        // ========== NEW: Update clouds ==========
-        for (Cloud cloud : clouds) {
-            cloud.x -= cloud.speed;
-            if (cloud.x + cloud.width < 0) {
-                cloud.x = WIDTH;
-                cloud.y = random.nextInt(HEIGHT / 3);
+    private void update() {
+        if (!isSimulating()) return;
+        long start = System.nanoTime();
+        
+        // Flaps are stamped with the tick they are applied on
+        if (replayPlayer != null) {
+            jumpPending = replayPlayer.flapAt(sim.tick);
+            if (jumpPending) {
+                playSound(JUMP_SOUND);
             }
-        }
-        // ========================================
-        
-        // ========== NEW: Check and update speed level ==========
-        int oldSpeedLevel = speedLevel;
-        if (score >= SPEED_THRESHOLDS[1]) {
-            speedLevel = 3; // Fast
-        } else if (score >= SPEED_THRESHOLDS[0]) {
-            speedLevel = 2; // Medium
         } else {
-            speedLevel = 1; // Slow
+            Bot pilot = bot;
+            boolean piloted = autopilotOn && pilot != null;
+            if (jumpPending) {
+                effectNanos = jumpNanos;
+            } else if (piloted && flapFor(pilot)) {
+                jumpPending = true;
+                playSound(JUMP_SOUND);
+            }
+            assisted |= piloted;
+            if (jumpPending && recording != null) {
+                recording.add(Replay.FLAP, sim.tick);
+            }
         }
         
-        // Play speed up sound when speed level increases
-        if (oldSpeedLevel < speedLevel) {
-            playSound(speedUpSound);
+        FlappyEvents.Tick event = new FlappyEvents.Tick();
+        event.begin();
+        event.tick = sim.tick;
+        event.flap = jumpPending;
+        event.autopilot = autopilotOn;
+        int events = sim.step(jumpPending);
+        history.record(sim);
+        jumpPending = false;
+        event.speedLevel = sim.speedLevel;
+        event.pipeCount = sim.pipeCount;
+        event.score = sim.score;
+        event.collision = (events & FlappySimulation.EVENT_HIT) != 0;
+        event.commit();
+        
+        if ((events & FlappySimulation.EVENT_SPEED_UP) != 0) {
+            playSound(SPEED_UP_SOUND);
         }
-        // ========================================================
-        
-        // Update bird physics with speed modifier
-        birdVelocity += GRAVITY * (hardMode ? 1.2 : 1.0);
-        birdY += birdVelocity;
-        
-        // Update pipes with variable speed
-        for (int i = 0; i < pipes.size(); i++) {
-            Pipe pipe = pipes.get(i);
-            
-            // ========== NEW: Variable pipe speed based on speed level ==========
-            double currentPipeSpeed = BIRD_SPEEDS[speedLevel - 1] * (hardMode ? 1.3 : 1.0);
-            pipe.x -= currentPipeSpeed;
-            // ================================================================
-            
-            // Check if pipe passed bird
-            if (!pipe.passed && pipe.x + PIPE_WIDTH < WIDTH / 4) {
-                pipe.passed = true;
-                score++;
-                
-                // Update high score
-                if (score > highScore) {
-                    highScore = score;
-                    saveHighScore();
-                }
-                
-                // Play score sound
-                playSound(scoreSound);
-            }
-            
-            // Remove off-screen pipes and add new ones
-            if (pipe.x + PIPE_WIDTH < 0) {
-                pipes.remove(i);
-                addPipe(pipes.get(pipes.size() - 1).x + PIPE_SPACING);
-            }
-            
-            // Check collision
-            if (checkCollision(pipe)) {
-                gameOver = true;
-                playSound(hitSound);
-                timer.stop();
-                return;
+        if ((events & FlappySimulation.EVENT_SCORE) != 0) {
+            // Update high score
+            if (sim.score > highScore && replayPlayer == null && !assisted) {
+                highScore = sim.score;
+                highScores.submit(highScore);
             }
+            playSound(SCORE_SOUND);
         }
-        
-        // Check ground and ceiling collision
-        if (birdY + BIRD_HEIGHT / 2 > HEIGHT - GROUND_HEIGHT || birdY - BIRD_HEIGHT / 2 < 0) {
-            gameOver = true;
-            playSound(hitSound);
-            timer.stop();
+        if ((events & FlappySimulation.EVENT_HIT) != 0) {
+            highScores.flush();
+            finishRecording();
+            playSound(HIT_SOUND);
         }
-        
-        repaint();
+        stats.tick.record(System.nanoTime() - start);
     }
     
-    private boolean checkCollision(Pipe pipe) {
-        int birdLeft = WIDTH / 4 - BIRD_WIDTH / 2 + 5;
-        int birdRight = WIDTH / 4 + BIRD_WIDTH / 2 - 5;
-        int birdTop = (int)birdY - BIRD_HEIGHT / 2 + 5;
-        int birdBottom = (int)birdY + BIRD_HEIGHT / 2 - 5;
-        
-        int pipeLeft = pipe.x + 5;
-        int pipeRight = pipe.x + PIPE_WIDTH - 5;
-        int pipeGap = hardMode ? PIPE_GAP - 50 : PIPE_GAP;
-        int pipeTopBottom = pipe.height;
-        int pipeBottomTop = pipe.height + pipeGap;
-        
-        if (birdRight > pipeLeft && birdLeft < pipeRight) {
-            if (birdTop < pipeTopBottom || birdBottom > pipeBottomTop) {
-                return true;
+    // The bot's decision for the coming tick, from a copy it cannot disturb the game through
+    private boolean flapFor(Bot pilot) {
+        botView.copy(sim);
+        botView.gameStarted = true;
+        botView.autopilot = true;
+        botView.runSeed = runSeed;
+        return pilot.flap(botView);
+    }
+    
+    // Back REWIND_TICKS, or as far as the history goes. A run is left paused
+    // there and no longer counts for the high score; a replay plays on from it.
+    private void rewind() {
+        if (!gameStarted) return;
+        long target = Math.max(history.oldestTick(), sim.tick - REWIND_TICKS);
+        if (target < 0 || !history.restore(target, sim)) return;
+        jumpPending = false;
+        effectNanos = keyNanos;
+        if (replayPlayer != null) {
+            replayPlayer.seek(sim.tick);
+            return;
+        }
+        assisted = true;
+        gamePaused = true;
+        if (recording != null) {
+            recording.truncate(sim.tick);
+            recording.add(Replay.PAUSE, sim.tick);
+        }
+        playSound(SELECT_SOUND);
+    }
+    
+    // Captures the run now and writes it in the background. Its recording ends
+    // with the reset that follows, as a resumed run cannot be replayed from its seed.
+    private void saveRun() {
+        byte[] state = SaveState.toBytes(sim, (assisted ? SAVE_ASSISTED : 0) | (nightMode ? SAVE_NIGHT : 0));
+        new Thread(() -> {
+            try {
+                SaveState.save(Paths.get(SAVE_FILE), state);
+            } catch (IOException e) {
+                System.err.println("Could not save the run: " + e.getMessage());
             }
+        }, "save-writer").start();
+    }
+    
+    // Loads the saved run paused, and deletes the save so it resumes once
+    private boolean resumeRun() {
+        Path file = Paths.get(SAVE_FILE);
+        if (!Files.exists(file)) return false;
+        try {
+            int bits = SaveState.load(file, sim);
+            Files.delete(file);
+            assisted = (bits & SAVE_ASSISTED) != 0;
+            nightMode = (bits & SAVE_NIGHT) != 0;
+        } catch (IOException e) {
+            System.err.println("Could not resume the saved run: " + e.getMessage());
+            resetGame();
+            return false;
         }
-        return false;
+        history.clear();
+        history.record(sim);
+        gameStarted = true;
+        gamePaused = true;
+        return true;
     }
     
+    // Handles the keys that arrived before the given time
+    private void processInput(long before) {
+        while (input.hasArrivedBefore(before)) {
+            keyNanos = input.arrivedNanos();
+            handleKey(input.key());
+            input.remove();
+        }
+    }
+    
+    // Key events arrive on the EDT; game state is only touched on the simulation thread
     @Override
     public void keyPressed(KeyEvent e) {
-        int key = e.getKeyCode();
+        input.offer(e.getKeyCode(), System.nanoTime());
+        LockSupport.unpark(simThread);
+    }
+    
+    private void handleKey(int key) {
+        if (key == KeyEvent.VK_F3) {
+            showStats = !showStats;
+            effectNanos = keyNanos;
+            return;
+        }
+        if (key == KeyEvent.VK_F11) {
+            SwingUtilities.invokeLater(this::toggleFullScreen);
+            return;
+        }
+        if (key == KeyEvent.VK_BACK_SPACE) {
+            rewind();
+            return;
+        }
+        if (replayPlayer != null) return;
         
         switch (key) {
             case KeyEvent.VK_SPACE:
-                if (!gameStarted && !gameOver) {
+                if (!gameStarted && !sim.gameOver) {
                     gameStarted = true;
-                    timer.start();
-                    playSound(selectSound);
-                } else if (gameStarted && !gameOver && !gamePaused) {
-                    // ========== NEW: Variable jump strength ==========
-                    birdVelocity = JUMP_STRENGTH * JUMP_MODIFIERS[speedLevel - 1] * (hardMode ? 0.9 : 1.0);
-                    // =================================================
-                    playSound(jumpSound);
+                    recording = new Replay(runSeed, sim.hardMode, nightMode);
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
+                } else if (gameStarted && !sim.gameOver && !gamePaused) {
+                    // Applied at the start of the next tick, which measures its latency
+                    if (!jumpPending) {
+                        jumpNanos = keyNanos;
+                    }
+                    jumpPending = true;
+                    playSound(JUMP_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_P:
-                if (gameStarted && !gameOver) {
+                if (gameStarted && !sim.gameOver) {
                     gamePaused = !gamePaused;
-                    playSound(selectSound);
-                    repaint();
+                    if (gamePaused) {
+                        highScores.flush();
+                    }
+                    if (recording != null) {
+                        recording.add(gamePaused ? Replay.PAUSE : Replay.RESUME, sim.tick);
+                    }
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_R:
-                if (gameOver || gamePaused) {
+                if (sim.gameOver || gamePaused) {
                     resetGame();
-                    if (gameStarted) {
-                        timer.start();
-                    }
-                    playSound(selectSound);
-                    repaint();
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_M:
-                if (gameOver || gamePaused) {
+                if (sim.gameOver || gamePaused) {
                     resetGame();
-                    playSound(selectSound);
-                    repaint();
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_1:
                 if (!gameStarted) {
-                    hardMode = false;
+                    sim.hardMode = false;
                     nightMode = false;
-                    playSound(selectSound);
-                    repaint();
+                    // Pipe heights depend on the mode, so regenerate them from the run's seed
+                    restartRun(runSeed);
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_2:
                 if (!gameStarted) {
-                    hardMode = !hardMode;
-                    playSound(selectSound);
-                    repaint();
+                    sim.hardMode = !sim.hardMode;
+                    restartRun(runSeed);
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_3:
                 if (!gameStarted) {
                     nightMode = !nightMode;
-                    initializeStars(); // Reinitialize stars for night mode
-                    playSound(selectSound);
-                    repaint();
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
                 
             case KeyEvent.VK_4:
                 if (!gameStarted) {
                     soundsEnabled = !soundsEnabled;
-                    playSound(selectSound);
-                    repaint();
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
                 }
                 break;
+                
+            case KeyEvent.VK_S:
+                if (gamePaused) {
+                    saveRun();
+                    resetGame();
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
+                }
+                break;
+                
+            case KeyEvent.VK_L:
+                if (!gameStarted && resumeRun()) {
+                    effectNanos = keyNanos;
+                    playSound(SELECT_SOUND);
+                }
+                break;
+                
+            case KeyEvent.VK_A:
+                autopilotOn = !autopilotOn;
+                if (autopilotOn && bot == null) {
+                    loadAutopilot();
+                }
+                effectNanos = keyNanos;
+                playSound(SELECT_SOUND);
+                break;
         }
     }
     
@@ -939,31 +1212,59 @@ public class FlappyBird extends JPanel implements ActionListener, KeyListener {
     @Override
     public void keyTyped(KeyEvent e) {}
     
-    private class Pipe {
-        int x;
-        int height;
-        boolean passed;
-        
-        Pipe(int x, int height) {
-            this.x = x;
-            this.height = height;
-            this.passed = false;
+    // Cap colors are the pipe colors darkened by 40 per channel
+    private static Color[] darker(Color[] colors) {
+        Color[] result = new Color[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            result[i] = new Color(
+                Math.max(0, colors[i].getRed() - 40),
+                Math.max(0, colors[i].getGreen() - 40),
+                Math.max(0, colors[i].getBlue() - 40)
+            );
         }
+        return result;
     }
     
     public static void main(String[] args) {
+        // java FlappyBird --replay replays/run-....fbr watches a recorded run;
+        // --brain brains/best.nn makes the autopilot an evolved network and
+        // --bot MyBot one written against the Bot interface
+        Replay replay = null;
+        Bot bot = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            try {
+                if (args[i].equals("--replay")) {
+                    replay = Replay.load(Paths.get(args[i + 1]));
+                } else if (args[i].equals("--brain")) {
+                    bot = NeuralController.load(Paths.get(args[i + 1]));
+                } else if (args[i].equals("--bot")) {
+                    bot = Bot.create(args[i + 1]);
+                }
+            } catch (IOException | ReflectiveOperationException | ClassCastException e) {
+                System.err.println("Could not load " + args[i + 1] + ": " + e);
+                System.exit(1);
+            }
+        }
+        
+        Replay startReplay = replay;
+        Bot startBot = bot;
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Flappy Bird - SPEED EDITION");
             FlappyBird game = new FlappyBird();
+            game.setBot(startBot);
+            if (startReplay != null) {
+                game.playReplay(startReplay);
+            }
             
             frame.add(game);
             frame.pack();
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setLocationRelativeTo(null);
-            frame.setResizable(false);
+            frame.setResizable(true);
             frame.setVisible(true);
             
             game.requestFocusInWindow();
+            game.start();
         });
     }
 }
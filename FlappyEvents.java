@@ -0,0 +1,120 @@
+import jdk.jfr.*;
+
+// Custom JDK Flight Recorder events, so GC pauses and allocation in a
+// recording can be lined up with what the game was doing. They cost next to
+// nothing unless a recording is running:
+//
+//   java -XX:StartFlightRecording=filename=flappy.jfr,settings=profile FlappyBird
+//
+// and show up under "FlappyBird" in JDK Mission Control or `jfr print`.
+final class FlappyEvents {
+    private FlappyEvents() {}
+
+    @Name("flappybird.Tick")
+    @Label("Simulation Tick")
+    @Category({"FlappyBird", "Game Loop"})
+    @StackTrace(false)
+    static class Tick extends Event {
+        @Label("Tick")
+        long tick;
+
+        @Label("Speed Level")
+        int speedLevel;
+
+        @Label("Pipe Count")
+        int pipeCount;
+
+        @Label("Score")
+        int score;
+
+        @Label("Flap")
+        boolean flap;
+
+        @Label("Autopilot")
+        boolean autopilot;
+
+        @Label("Collision")
+        boolean collision;
+    }
+
+    @Name("flappybird.Paint")
+    @Label("Paint Pass")
+    @Category({"FlappyBird", "Rendering"})
+    @StackTrace(false)
+    static class Paint extends Event {
+        @Label("Interpolation Alpha")
+        double alpha;
+
+        @Label("Screen")
+        String screen;
+
+        @Label("Night Mode")
+        boolean nightMode;
+
+        @Label("Contents Lost")
+        boolean contentsLost;
+
+        @Label("Render Scale")
+        double renderScale;
+    }
+
+    @Name("flappybird.Sound")
+    @Label("Sound Trigger")
+    @Category({"FlappyBird", "Audio"})
+    @StackTrace(false)
+    static class Sound extends Event {
+        @Label("Sound")
+        String sound;
+
+        @Label("Fallback Beep")
+        boolean beep;
+    }
+
+    @Name("flappybird.SoundLoad")
+    @Label("Sound Asset Load")
+    @Category({"FlappyBird", "Audio"})
+    @StackTrace(false)
+    static class SoundLoad extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Decoded")
+        @Description("False when the file was missing or unreadable and a tone was synthesized")
+        boolean decoded;
+
+        @Label("Samples")
+        int samples;
+    }
+
+    @Name("flappybird.HighScoreIO")
+    @Label("High Score I/O")
+    @Category({"FlappyBird", "Persistence"})
+    static class HighScoreIO extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Score")
+        int score;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("flappybird.QualityChange")
+    @Label("Quality Tier Change")
+    @Category({"FlappyBird", "Rendering"})
+    @StackTrace(false)
+    static class QualityChange extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Frame p90 (ms)")
+        double p90Millis;
+
+        @Label("Frame Budget (ms)")
+        double budgetMillis;
+    }
+}
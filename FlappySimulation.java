@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+// Headless game rules: bird physics, pipe scrolling, scoring and speed levels.
+// No AWT/Swing types here so the engine can be stepped from tests, batch jobs
+// or any front end; FlappyBird only drives and draws it.
+public class FlappySimulation {
+    static final int WIDTH = 800;
+    static final int HEIGHT = 600;
+    static final int GROUND_HEIGHT = 50;
+    static final int BIRD_WIDTH = 40;
+    static final int BIRD_HEIGHT = 30;
+    static final int PIPE_WIDTH = 80;
+    static final int PIPE_GAP = 200;
+    static final int PIPE_SPACING = 300;
+    static final double GRAVITY = 0.5;
+    static final double JUMP_STRENGTH = -10;
+    static final long TICK_NANOS = 16_000_000L; // One tick of the original 16 ms timer
+
+    static final int[] SPEED_THRESHOLDS = {5, 15}; // Scores to change speed
+    static final double[] BIRD_SPEEDS = {3.0, 4.0, 5.0}; // Pipe movement speeds
+    static final double[] JUMP_MODIFIERS = {1.0, 0.9, 0.8}; // Jump strength modifiers
+
+    // Hard mode: heavier gravity, weaker flaps, faster pipes and a narrower gap
+    static final double HARD_GRAVITY = 1.2;
+    static final double HARD_JUMP = 0.9;
+    static final double HARD_PIPE_SPEED = 1.3;
+    static final int HARD_GAP_SHRINK = 50;
+
+    // Collision boxes are inset this far from the drawn bird and pipes
+    static final int COLLISION_INSET = 5;
+    static final int BIRD_LEFT = WIDTH / 4 - BIRD_WIDTH / 2 + COLLISION_INSET;
+    static final int BIRD_RIGHT = WIDTH / 4 + BIRD_WIDTH / 2 - COLLISION_INSET;
+
+    // Bits returned by step() so the front end can play sounds and persist scores
+    static final int EVENT_SCORE = 1;
+    static final int EVENT_SPEED_UP = 2;
+    static final int EVENT_HIT = 4;
+
+    // Cloud sizes are drawn from these ranges
+    static final int CLOUD_MIN_WIDTH = 60;
+    static final int CLOUD_WIDTHS = 80;
+    static final int CLOUD_MIN_HEIGHT = 20;
+    static final int CLOUD_HEIGHTS = 30;
+    static final int CLOUD_COUNT = 8;
+
+    double birdY;
+    double prevBirdY; // Position before the last tick, for render interpolation
+    double birdVelocity;
+    int score;
+    boolean gameOver;
+    boolean hardMode;
+    int speedLevel = 1; // 1=Slow, 2=Medium, 3=Fast
+    long tick; // Ticks stepped since the last reset; replays stamp inputs with it
+
+    // Animation
+    int birdAnimationFrame = 0;
+    int animationDelay = 0;
+    int backgroundOffset = 0;
+    ArrayList<Cloud> clouds;
+
+    // Pipes live in a fixed ring of slots ordered left to right starting at
+    // pipeHead. The ring is always full: when the leftmost pipe scrolls off
+    // screen its slot is reused for a new pipe on the right.
+    final int pipeSpacing;
+    final int pipeCount;
+    final int[] pipeX;
+    final int[] pipePrevX;
+    final int[] pipeHeight;
+    final boolean[] pipePassed;
+    int pipeHead;
+
+    // Clouds; pipes come from the level generator. Both are saved in SaveState.
+    final GameRandom random;
+    final LevelGenerator levels;
+
+    static class Cloud {
+        int x, y;
+        int width, height;
+        int speed;
+
+        Cloud(int x, int y, int width, int height, int speed) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.speed = speed;
+        }
+    }
+
+    public FlappySimulation() {
+        this(new Random());
+    }
+
+    public FlappySimulation(Random random) {
+        this(random, PIPE_SPACING);
+    }
+
+    public FlappySimulation(Random random, int pipeSpacing) {
+        this(random, new LevelGenerator(pipeSpacing));
+    }
+
+    // The clouds' generator is seeded from the given one, so its state can be saved
+    FlappySimulation(Random random, LevelGenerator levels) {
+        this.random = random instanceof GameRandom ? (GameRandom) random : new GameRandom(random.nextLong());
+        this.levels = levels;
+        this.pipeSpacing = levels.pipeSpacing;
+        // Enough pipes to cover the screen plus the one scrolling out
+        pipeCount = (WIDTH + PIPE_WIDTH + pipeSpacing - 1) / pipeSpacing;
+        pipeX = new int[pipeCount];
+        pipePrevX = new int[pipeCount];
+        pipeHeight = new int[pipeCount];
+        pipePassed = new boolean[pipeCount];
+        clouds = new ArrayList<>();
+        initializeClouds();
+        reset();
+    }
+
+    private void initializeClouds() {
+        clouds.clear();
+        for (int i = 0; i < CLOUD_COUNT; i++) {
+            int x = random.nextInt(WIDTH * 2);
+            int y = random.nextInt(HEIGHT / 3);
+            int width = CLOUD_MIN_WIDTH + random.nextInt(CLOUD_WIDTHS);
+            int height = CLOUD_MIN_HEIGHT + random.nextInt(CLOUD_HEIGHTS);
+            int speed = 1 + random.nextInt(3);
+            clouds.add(new Cloud(x, y, width, height, speed));
+        }
+    }
+
+    // Reseeds the generators first, so the same seed and mode always produce
+    // the same pipes and clouds
+    public void reset(long seed) {
+        reset(seed, 0);
+    }
+
+    // Starts the run as if startScore pipes were already passed, at the speed
+    // level that score flies at; pipes are drawn as from that point of a run
+    public void reset(long seed, int startScore) {
+        random.setSeed(seed);
+        restart(seed, startScore);
+    }
+
+    public void reset() {
+        restart(random.nextLong(), 0);
+    }
+
+    private void restart(long levelSeed, int startScore) {
+        levels.restart(levelSeed, hardMode, startScore);
+        tick = 0;
+        birdY = HEIGHT / 2;
+        prevBirdY = birdY;
+        birdVelocity = 0;
+        score = startScore;
+        gameOver = false;
+        birdAnimationFrame = 0;
+        backgroundOffset = 0;
+        speedLevel = speedLevelFor(startScore);
+
+        // Create initial pipes
+        pipeHead = 0;
+        for (int i = 0; i < pipeCount; i++) {
+            placePipe(i, WIDTH + i * pipeSpacing);
+        }
+
+        initializeClouds();
+    }
+
+    void placePipe(int slot, int x) {
+        pipeX[slot] = x;
+        pipePrevX[slot] = x;
+        pipeHeight[slot] = levels.nextHeight();
+        pipePassed[slot] = false;
+    }
+
+    // Slot of the i-th pipe from the left
+    int pipeSlot(int i) {
+        int slot = pipeHead + i;
+        return slot < pipeCount ? slot : slot - pipeCount;
+    }
+
+    public void flap() {
+        birdVelocity = jumpVelocity(speedLevel, hardMode);
+    }
+
+    // Advances the game by one 16 ms tick. A flap is applied before physics,
+    // exactly as a key press landing between two timer ticks would be.
+    public int step(boolean flap) {
+        if (gameOver) return 0;
+        if (flap) flap();
+        tick++;
+
+        int events = 0;
+        prevBirdY = birdY;
+        System.arraycopy(pipeX, 0, pipePrevX, 0, pipeCount);
+
+        // Update animations
+        animationDelay++;
+        if (animationDelay >= 5) {
+            birdAnimationFrame = (birdAnimationFrame + 1) % 3;
+            animationDelay = 0;
+        }
+
+        // Scroll background
+        backgroundOffset = (backgroundOffset + 1) % WIDTH;
+
+        for (Cloud cloud : clouds) {
+            cloud.x -= cloud.speed;
+            if (cloud.x + cloud.width < 0) {
+                cloud.x = WIDTH;
+                cloud.y = random.nextInt(HEIGHT / 3);
+            }
+        }
+
+        // Check and update speed level
+        int oldSpeedLevel = speedLevel;
+        speedLevel = speedLevelFor(score);
+        if (oldSpeedLevel < speedLevel) {
+            events |= EVENT_SPEED_UP;
+        }
+
+        // Update bird physics with speed modifier
+        birdVelocity += gravity(hardMode);
+        birdY += birdVelocity;
+
+        // Update pipes with variable speed
+        double currentPipeSpeed = pipeSpeed(speedLevel, hardMode);
+        for (int i = 0; i < pipeCount; i++) {
+            int slot = pipeSlot(i);
+            pipeX[slot] = scroll(pipeX[slot], currentPipeSpeed);
+
+            // Check if pipe passed bird
+            if (!pipePassed[slot] && scores(pipeX[slot])) {
+                pipePassed[slot] = true;
+                score++;
+                events |= EVENT_SCORE;
+            }
+
+            // Check collision
+            if (checkCollision(pipeX[slot], pipeHeight[slot])) {
+                gameOver = true;
+                return events | EVENT_HIT;
+            }
+        }
+
+        // Recycle the off-screen pipe as a new one behind the last
+        if (offScreen(pipeX[pipeHead])) {
+            int last = pipeSlot(pipeCount - 1);
+            placePipe(pipeHead, pipeX[last] + pipeSpacing);
+            pipeHead = pipeSlot(1);
+        }
+
+        // Check ground and ceiling collision
+        if (outOfBounds(birdY)) {
+            gameOver = true;
+            events |= EVENT_HIT;
+        }
+
+        return events;
+    }
+
+    // Speed level the next tick runs at with this score
+    static int speedLevelFor(int score) {
+        if (score >= SPEED_THRESHOLDS[1]) return 3; // Fast
+        if (score >= SPEED_THRESHOLDS[0]) return 2; // Medium
+        return 1; // Slow
+    }
+
+    boolean checkCollision(int pipeX, int pipeHeight) {
+        return collides(birdY, pipeX, pipeHeight, gap(hardMode));
+    }
+
+    // The rules as kernels on plain values, shared with BatchSimulation,
+    // ReachabilitySolver and LevelGenerator so none of them keeps a copy
+
+    static double gravity(boolean hardMode) {
+        return GRAVITY * (hardMode ? HARD_GRAVITY : 1.0);
+    }
+
+    // Velocity right after a flap at this speed level
+    static double jumpVelocity(int speedLevel, boolean hardMode) {
+        return JUMP_STRENGTH * JUMP_MODIFIERS[speedLevel - 1] * (hardMode ? HARD_JUMP : 1.0);
+    }
+
+    static double pipeSpeed(int speedLevel, boolean hardMode) {
+        return BIRD_SPEEDS[speedLevel - 1] * (hardMode ? HARD_PIPE_SPEED : 1.0);
+    }
+
+    static int gap(boolean hardMode) {
+        return hardMode ? PIPE_GAP - HARD_GAP_SHRINK : PIPE_GAP;
+    }
+
+    // Pipe x after one tick; x is an int, so the fraction is dropped every tick
+    static int scroll(int pipeX, double speed) {
+        return (int) (pipeX - speed);
+    }
+
+    // Whether a pipe at x is behind the bird and scores once
+    static boolean scores(int pipeX) {
+        return pipeX + PIPE_WIDTH < WIDTH / 4;
+    }
+
+    // Whether the leftmost pipe has left the screen, to be recycled as a new one behind the last
+    static boolean offScreen(int pipeX) {
+        return pipeX + PIPE_WIDTH < 0;
+    }
+
+    static boolean collides(double birdY, int pipeX, int pipeHeight, int gap) {
+        int birdTop = (int) birdY - BIRD_HEIGHT / 2 + COLLISION_INSET;
+        int birdBottom = (int) birdY + BIRD_HEIGHT / 2 - COLLISION_INSET;
+        int pipeLeft = pipeX + COLLISION_INSET;
+        int pipeRight = pipeX + PIPE_WIDTH - COLLISION_INSET;
+        return BIRD_RIGHT > pipeLeft && BIRD_LEFT < pipeRight
+            && (birdTop < pipeHeight || birdBottom > pipeHeight + gap);
+    }
+
+    // Whether the bird has hit the ground or the ceiling
+    static boolean outOfBounds(double birdY) {
+        return birdY + BIRD_HEIGHT / 2 > HEIGHT - GROUND_HEIGHT || birdY - BIRD_HEIGHT / 2 < 0;
+    }
+}
@@ -0,0 +1,68 @@
+import java.awt.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.Locale;
+
+// Always-on timing of the game loop. The loop records into these histograms
+// with System.nanoTime() around each phase; F3 shows a summary overlay and the
+// full histograms are written to a text file on exit so builds can be compared.
+class FrameStats {
+    static final int OVERLAY_WIDTH = 440;
+    private static final int OVERLAY_LINE_HEIGHT = 14;
+    private static final long OVERLAY_REFRESH_NANOS = 500_000_000L;
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+
+    final LatencyHistogram frame = new LatencyHistogram("frame", FlappySimulation.TICK_NANOS);
+    final LatencyHistogram tick = new LatencyHistogram("tick", FlappySimulation.TICK_NANOS);
+    final LatencyHistogram render = new LatencyHistogram("render", FlappySimulation.TICK_NANOS);
+    final LatencyHistogram background = new LatencyHistogram("render.background", 0);
+    final LatencyHistogram pipes = new LatencyHistogram("render.pipes", 0);
+    final LatencyHistogram sound = new LatencyHistogram("sound", 0);
+    final LatencyHistogram io = new LatencyHistogram("io.highscore", 0);
+    final LatencyHistogram input = new LatencyHistogram("input.to.display", 0);
+
+    private final LatencyHistogram[] all = {frame, tick, render, background, pipes, sound, io, input};
+
+    // Overlay text is rebuilt twice a second rather than every frame
+    private final String[] overlayLines = new String[all.length + 1];
+    final int overlayHeight = overlayLines.length * OVERLAY_LINE_HEIGHT + 8;
+    private long overlayUpdated;
+
+    void drawOverlay(Graphics2D g2d, int x, int y) {
+        long now = System.nanoTime();
+        if (overlayLines[0] == null || now - overlayUpdated > OVERLAY_REFRESH_NANOS) {
+            overlayUpdated = now;
+            overlayLines[0] = String.format(Locale.ROOT, "%-18s %7s %7s %7s %7s %s",
+                "ms", "p50", "p99", "max", "mean", "missed");
+            for (int i = 0; i < all.length; i++) {
+                LatencyHistogram h = all[i];
+                overlayLines[i + 1] = String.format(Locale.ROOT, "%-18s %7.2f %7.2f %7.2f %7.2f %d/%d",
+                    h.name, h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6, h.max() / 1e6,
+                    h.mean() / 1e6, h.missed(), h.count());
+            }
+        }
+
+        g2d.setColor(OVERLAY_BACKGROUND);
+        g2d.fillRect(x, y, OVERLAY_WIDTH, overlayHeight);
+        g2d.setFont(OVERLAY_FONT);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < overlayLines.length; i++) {
+            g2d.drawString(overlayLines[i], x + 6, y + (i + 1) * OVERLAY_LINE_HEIGHT);
+        }
+    }
+
+    // Writes every histogram to the file; runs from a shutdown hook, so the
+    // loop may still be recording and the snapshot can be a few samples off
+    void dump(Path file) {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("# FlappyBird frame stats, nanoseconds");
+            out.println("# java " + System.getProperty("java.version") + ", " + System.getProperty("os.name"));
+            for (LatencyHistogram h : all) {
+                h.write(out);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write frame stats: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Random;
+
+// java.util.Random's generator with its state out in the open, so save states
+// can store and restore it. It is the same 48-bit LCG and gives the same
+// numbers for a seed; only the state is readable. Unlike Random it is not
+// thread-safe, and nextGaussian's cached second value is not part of the
+// state; the simulation uses neither.
+final class GameRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // Set by Random's constructor through setSeed, so no initializer
+
+    GameRandom() {
+        super();
+    }
+
+    GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        super.setSeed(seed); // Drops the cached Gaussian
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    long state() {
+        return state;
+    }
+
+    void setState(long state) {
+        this.state = state & MASK;
+    }
+}
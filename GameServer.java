@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Hosts many games in one JVM, each simulated by the server: clients only
+// send START and timestamped FLAP messages and are sent the state that
+// results, as a WireState keyframe and then a delta every tick. Sessions are
+// spread over shards, a thread each with its own selector, one per core by
+// default. A shard steps all its games together on the game's 16 ms tick,
+// writes each one's delta into the session's buffer and flushes it without
+// blocking, so a shard costs one thread however many sessions it holds.
+//
+// A flap is stamped with the tick it was meant for, the tick of the state
+// the client saw, and applied on that tick or, if it arrived late, on the
+// next one the server steps. The delta of the tick that applied it echoes
+// the client's time, so the client can measure flap-to-state latency. A flap
+// up to ROLLBACK_TICKS late is not applied late: the session is rolled back
+// to the tick it was meant for from its StateHistory, stepped forward again
+// with it, and sent a keyframe of the corrected state. A session whose client
+// does not read fast enough skips deltas and gets a keyframe once its buffer
+// has room again.
+//
+//   java GameServer [--port 7777] [--shards N]
+//
+// LoadClient drives it with thousands of sessions over localhost.
+public class GameServer {
+    static final int DEFAULT_PORT = 7777;
+
+    private static final int OUT_BUFFER = 8 * 1024;
+    private static final int FLAP_QUEUE = 8; // Flaps waiting for their tick; more are dropped
+    private static final int MAX_LEAD_TICKS = 60; // Flaps stamped further ahead land this far ahead
+    private static final int ROLLBACK_TICKS = 8; // 128 ms; flaps later than this are applied late
+    private static final long MAX_LAG_NANOS = 250_000_000L; // Ticks further behind than this are skipped
+    private static final long REPORT_NANOS = 5_000_000_000L;
+
+    private static final class Session {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final FlappySimulation sim = new FlappySimulation(new Random());
+        final WireState sent = new WireState(sim.pipeCount);
+        final StateHistory history = new StateHistory(sim, ROLLBACK_TICKS + 1);
+        long flapBits; // Whether tick t flapped, at bit t % 64, for stepping forward after a rollback
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        final ByteBuffer out = ByteBuffer.allocateDirect(OUT_BUFFER);
+        boolean started;
+        boolean resync; // The last tick's delta was not sent, so the next frame is a keyframe
+
+        // Pending flaps in arrival order, as a ring
+        final long[] flapTicks = new long[FLAP_QUEUE];
+        final long[] flapNanos = new long[FLAP_QUEUE];
+        int flapHead;
+        int flapCount;
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private static final class Shard implements Runnable {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        final ArrayList<Session> sessions = new ArrayList<>();
+        final LatencyHistogram tickTime = new LatencyHistogram("tick", FlappySimulation.TICK_NANOS);
+
+        // Written by the shard only, read by the reporter
+        volatile int sessionCount;
+        volatile long steps;
+        volatile long bytesOut;
+        volatile long lateFlaps;
+        volatile long rollbacks;
+        volatile long droppedFlaps;
+        volatile long skippedDeltas;
+
+        Shard() throws IOException {
+            selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime() + FlappySimulation.TICK_NANOS;
+            while (true) {
+                try {
+                    long wait = nextTick - System.nanoTime();
+                    if (wait >= 1_000_000) {
+                        selector.select(wait / 1_000_000);
+                    } else {
+                        selector.selectNow();
+                    }
+                    register();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Session session = (Session) key.attachment();
+                        if (!key.isValid()) continue;
+                        if (key.isReadable()) read(session);
+                        if (key.isValid() && key.isWritable()) flush(session);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Shard failed: " + e);
+                    return;
+                }
+
+                long now = System.nanoTime();
+                if (now - nextTick > MAX_LAG_NANOS) {
+                    nextTick = now;
+                }
+                while (now - nextTick >= 0) {
+                    tick();
+                    nextTick += FlappySimulation.TICK_NANOS;
+                }
+            }
+        }
+
+        private void register() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    Session session = new Session(channel, key);
+                    key.attach(session);
+                    sessions.add(session);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            }
+            sessionCount = sessions.size();
+        }
+
+        private void read(Session session) {
+            try {
+                if (session.channel.read(session.in) < 0) {
+                    close(session);
+                    return;
+                }
+            } catch (IOException e) {
+                close(session);
+                return;
+            }
+
+            ByteBuffer in = session.in;
+            in.flip();
+            while (in.hasRemaining()) {
+                int type = in.get(in.position());
+                int size = type == WireState.START ? WireState.START_SIZE
+                    : type == WireState.FLAP ? WireState.FLAP_SIZE : -1;
+                if (size < 0) {
+                    close(session); // Not speaking the protocol
+                    return;
+                }
+                if (in.remaining() < size) break;
+                in.get();
+                if (type == WireState.START) {
+                    start(session, (in.get() & WireState.FLAG_HARD) != 0, in.getLong());
+                } else {
+                    queueFlap(session, in.getLong(), in.getLong());
+                }
+            }
+            in.compact();
+        }
+
+        private void start(Session session, boolean hardMode, long seed) {
+            FlappySimulation sim = session.sim;
+            sim.hardMode = hardMode;
+            sim.reset(seed);
+            session.history.clear();
+            session.history.record(sim);
+            session.flapBits = 0;
+            session.started = true;
+            session.flapCount = 0;
+            session.resync = true;
+            sendFrame(session, false, 0);
+        }
+
+        private void queueFlap(Session session, long tick, long nanos) {
+            if (session.flapCount == FLAP_QUEUE) {
+                droppedFlaps++;
+                return;
+            }
+            int index = (session.flapHead + session.flapCount++) % FLAP_QUEUE;
+            session.flapTicks[index] = Math.min(tick, session.sim.tick + MAX_LEAD_TICKS);
+            session.flapNanos[index] = nanos;
+        }
+
+        private void tick() {
+            long start = System.nanoTime();
+            int stepped = 0;
+            for (int s = 0; s < sessions.size(); s++) {
+                Session session = sessions.get(s);
+                FlappySimulation sim = session.sim;
+                if (!session.started) continue;
+
+                // One flap a tick: a late one rolls the game back, or one that is due is applied
+                boolean late = session.flapCount > 0 && session.flapTicks[session.flapHead] < sim.tick;
+                boolean rolledBack = late && rollBack(session, session.flapTicks[session.flapHead]);
+                if (sim.gameOver && !rolledBack) continue;
+                boolean flap = !rolledBack && session.flapCount > 0 && session.flapTicks[session.flapHead] <= sim.tick;
+                long flapNanos = 0;
+                if (rolledBack || flap) {
+                    if (flap && late) lateFlaps++;
+                    flapNanos = session.flapNanos[session.flapHead];
+                    session.flapHead = (session.flapHead + 1) % FLAP_QUEUE;
+                    session.flapCount--;
+                }
+                if (!sim.gameOver) {
+                    long bit = 1L << (sim.tick & 63);
+                    session.flapBits = flap ? session.flapBits | bit : session.flapBits & ~bit;
+                    sim.step(flap);
+                    session.history.record(sim);
+                    stepped++;
+                }
+                sendFrame(session, rolledBack || flap, flapNanos);
+            }
+            // Backwards, as a failed write removes the session
+            for (int s = sessions.size() - 1; s >= 0; s--) {
+                Session session = sessions.get(s);
+                if (session.out.position() > 0 && (session.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                    flush(session);
+                }
+            }
+            steps += stepped;
+            tickTime.record(System.nanoTime() - start);
+        }
+
+        // Puts the game back to the tick the flap was meant for, applies it and
+        // steps forward again with the flaps since, if that tick is still held
+        private boolean rollBack(Session session, long tick) {
+            FlappySimulation sim = session.sim;
+            long now = sim.tick;
+            if (now - tick > ROLLBACK_TICKS || !session.history.restore(tick, sim)) return false;
+            session.flapBits |= 1L << (tick & 63);
+            for (long t = tick; t < now && !sim.gameOver; t++) {
+                sim.step((session.flapBits & 1L << (t & 63)) != 0);
+                session.history.record(sim);
+            }
+            // Deltas assume one tick since the last frame, and a rollback can change that
+            session.resync = true;
+            rollbacks++;
+            return true;
+        }
+
+        // A delta, or a keyframe after a skipped one; skipped itself if the client is that far behind
+        private void sendFrame(Session session, boolean ack, long ackNanos) {
+            if (session.out.remaining() < WireState.MAX_FRAME) {
+                session.resync = true;
+                skippedDeltas++;
+                return;
+            }
+            if (session.resync) {
+                session.sent.writeKeyframe(session.sim, ack, ackNanos, session.out);
+                session.resync = false;
+            } else {
+                session.sent.writeDelta(session.sim, ack, ackNanos, session.out);
+            }
+        }
+
+        private void flush(Session session) {
+            ByteBuffer out = session.out;
+            out.flip();
+            try {
+                bytesOut += session.channel.write(out);
+            } catch (IOException e) {
+                close(session);
+                return;
+            }
+            boolean more = out.hasRemaining();
+            out.compact();
+            // Wait for the socket only while it is full, rather than being woken every time it has room
+            session.key.interestOps(more ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void close(Session session) {
+            session.key.cancel();
+            closeQuietly(session.channel);
+            sessions.remove(session);
+            sessionCount = sessions.size();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Every REPORT_NANOS: sessions, game steps per second, bytes sent and the
+    // slowest shard's tick times, all over the interval since the last report
+    private static void report(Shard[] shards) {
+        long lastSteps = 0;
+        long lastBytes = 0;
+        // Per shard: its tick times as of the last report, now, and in between
+        LatencyHistogram[] lastTicks = new LatencyHistogram[shards.length];
+        LatencyHistogram[] ticks = new LatencyHistogram[shards.length];
+        LatencyHistogram interval = new LatencyHistogram("tick", 0);
+        for (int i = 0; i < shards.length; i++) {
+            lastTicks[i] = new LatencyHistogram("tick", 0);
+            ticks[i] = new LatencyHistogram("tick", 0);
+        }
+        long last = System.nanoTime();
+        while (true) {
+            try {
+                Thread.sleep(REPORT_NANOS / 1_000_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            int sessions = 0;
+            long steps = 0;
+            long bytes = 0;
+            long late = 0;
+            long rolledBack = 0;
+            long dropped = 0;
+            long skipped = 0;
+            long tickP99 = 0;
+            long tickMax = 0;
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = shards[i];
+                sessions += shard.sessionCount;
+                steps += shard.steps;
+                bytes += shard.bytesOut;
+                late += shard.lateFlaps;
+                rolledBack += shard.rollbacks;
+                dropped += shard.droppedFlaps;
+                skipped += shard.skippedDeltas;
+                ticks[i].copyFrom(shard.tickTime);
+                interval.difference(ticks[i], lastTicks[i]);
+                tickP99 = Math.max(tickP99, interval.percentile(0.99));
+                tickMax = Math.max(tickMax, interval.max());
+                LatencyHistogram swap = lastTicks[i];
+                lastTicks[i] = ticks[i];
+                ticks[i] = swap;
+            }
+            double seconds = (now - last) / 1e9;
+            double stepRate = (steps - lastSteps) / seconds;
+            double byteRate = (bytes - lastBytes) / seconds;
+            System.out.printf(Locale.ROOT,
+                "%5d sessions  %9.0f game ticks/s  %8.1f KB/s out  %6.0f B/s per session"
+                    + "  tick p99 %.2f ms max %.2f ms  since start: rollbacks %d  late flaps %d  dropped %d  skipped frames %d%n",
+                sessions, stepRate, byteRate / 1024, sessions == 0 ? 0 : byteRate / sessions,
+                tickP99 / 1e6, tickMax / 1e6, rolledBack, late, dropped, skipped);
+            lastSteps = steps;
+            lastBytes = bytes;
+            last = now;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int shardCount = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--shards": shardCount = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        Shard[] shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+            new Thread(shards[i], "server-shard-" + i).start();
+        }
+        Thread reporter = new Thread(() -> report(shards), "server-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        // This thread accepts, handing connections to the shards in turn
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.printf(Locale.ROOT, "Listening on port %d with %d shards%n", port, shardCount);
+            for (int next = 0; ; next = (next + 1) % shardCount) {
+                SocketChannel channel = server.accept();
+                shards[next].accepted.add(channel);
+                shards[next].selector.wakeup();
+            }
+        }
+    }
+}
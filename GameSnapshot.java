@@ -0,0 +1,81 @@
+// Everything the renderer reads about the game, copied out once per pass of
+// the simulation thread. Snapshots are recycled through SnapshotBuffer, so a
+// copy only writes into arrays sized when the snapshot was built.
+final class GameSnapshot {
+    // Simulation state
+    double birdY;
+    double prevBirdY;
+    double birdVelocity;
+    int score;
+    int speedLevel;
+    int birdAnimationFrame;
+    int backgroundOffset;
+    boolean gameOver;
+    boolean hardMode;
+    long tick;
+
+    // Pipes in screen order, left to right
+    final int pipeCount;
+    final int[] pipeX;
+    final int[] pipePrevX;
+    final int[] pipeHeight;
+
+    final int cloudCount;
+    final int[] cloudX;
+    final int[] cloudY;
+    final int[] cloudWidth;
+    final int[] cloudHeight;
+
+    // Front end state
+    boolean gameStarted;
+    boolean gamePaused;
+    boolean nightMode;
+    boolean soundsEnabled;
+    boolean showStats;
+    boolean simulating;
+    boolean autopilot;
+    int highScore;
+    long runSeed;
+    long inputNanos; // Arrival of the newest key whose effect this shows, 0 if none yet
+    long tickNanos; // When the last tick was due; the renderer interpolates from here
+
+    GameSnapshot(FlappySimulation sim) {
+        pipeCount = sim.pipeCount;
+        pipeX = new int[pipeCount];
+        pipePrevX = new int[pipeCount];
+        pipeHeight = new int[pipeCount];
+        cloudCount = sim.clouds.size();
+        cloudX = new int[cloudCount];
+        cloudY = new int[cloudCount];
+        cloudWidth = new int[cloudCount];
+        cloudHeight = new int[cloudCount];
+    }
+
+    void copy(FlappySimulation sim) {
+        birdY = sim.birdY;
+        prevBirdY = sim.prevBirdY;
+        birdVelocity = sim.birdVelocity;
+        score = sim.score;
+        speedLevel = sim.speedLevel;
+        birdAnimationFrame = sim.birdAnimationFrame;
+        backgroundOffset = sim.backgroundOffset;
+        gameOver = sim.gameOver;
+        hardMode = sim.hardMode;
+        tick = sim.tick;
+
+        for (int i = 0; i < pipeCount; i++) {
+            int slot = sim.pipeSlot(i);
+            pipeX[i] = sim.pipeX[slot];
+            pipePrevX[i] = sim.pipePrevX[slot];
+            pipeHeight[i] = sim.pipeHeight[slot];
+        }
+
+        for (int i = 0; i < cloudCount; i++) {
+            FlappySimulation.Cloud cloud = sim.clouds.get(i);
+            cloudX[i] = cloud.x;
+            cloudY[i] = cloud.y;
+            cloudWidth[i] = cloud.width;
+            cloudHeight[i] = cloud.height;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Text that is drawn every frame, pre-rendered into one sprite sheet. Labels
+// and digit sets are registered up front; the sheet is rasterized on first use
+// in an image compatible with the target, after which drawing text is a
+// sub-image blit with no font layout, measuring or allocation.
+class GlyphAtlas {
+    private static final int SHEET_WIDTH = 512;
+    private static final int PADDING = 2; // Room for anti-aliased edges
+
+    // A rectangle of the sheet and where the text baseline sits inside it
+    static final class Glyph {
+        final String text;
+        final Font font;
+        final Color color;
+        final Color shadow;
+        final int shadowOffset;
+        final int x, y, width, height;
+        final int baseline;
+        final int advance; // Pen advance of the text, not counting the shadow
+
+        private Glyph(String text, Font font, Color color, Color shadow, int shadowOffset,
+                      int x, int y, int width, int height, int baseline, int advance) {
+            this.text = text;
+            this.font = font;
+            this.color = color;
+            this.shadow = shadow;
+            this.shadowOffset = shadowOffset;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.baseline = baseline;
+            this.advance = advance;
+        }
+    }
+
+    private final Graphics2D measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    private Glyph[] glyphs = new Glyph[32];
+    private int count;
+    private int cursorX, cursorY, rowHeight;
+    private Image sheet;
+
+    Glyph label(String text, Font font, Color color) {
+        return label(text, font, color, null, 0);
+    }
+
+    // A label with a drop shadow baked in below and to the right
+    Glyph label(String text, Font font, Color color, Color shadow, int shadowOffset) {
+        if (sheet != null) {
+            throw new IllegalStateException("Glyphs must be added before the atlas is first drawn");
+        }
+
+        FontMetrics metrics = measure.getFontMetrics(font);
+        int advance = metrics.stringWidth(text);
+        int width = advance + shadowOffset + 2 * PADDING;
+        int height = metrics.getAscent() + metrics.getDescent() + shadowOffset + 2 * PADDING;
+        if (cursorX + width > SHEET_WIDTH) {
+            cursorX = 0;
+            cursorY += rowHeight;
+            rowHeight = 0;
+        }
+
+        Glyph glyph = new Glyph(text, font, color, shadow, shadowOffset,
+            cursorX, cursorY, width, height, PADDING + metrics.getAscent(), advance);
+        cursorX += width;
+        rowHeight = Math.max(rowHeight, height);
+
+        if (count == glyphs.length) {
+            glyphs = Arrays.copyOf(glyphs, count * 2);
+        }
+        glyphs[count++] = glyph;
+        return glyph;
+    }
+
+    // Glyphs for 0-9, indexed by digit
+    Glyph[] digits(Font font, Color color, Color shadow, int shadowOffset) {
+        Glyph[] digits = new Glyph[10];
+        for (int d = 0; d < 10; d++) {
+            digits[d] = label(String.valueOf(d), font, color, shadow, shadowOffset);
+        }
+        return digits;
+    }
+
+    // Draws the glyph with its pen position at (x, baselineY)
+    void draw(Graphics2D g2d, Glyph glyph, int x, int baselineY) {
+        int dx = x - PADDING;
+        int dy = baselineY - glyph.baseline;
+        g2d.drawImage(sheet(g2d), dx, dy, dx + glyph.width, dy + glyph.height,
+            glyph.x, glyph.y, glyph.x + glyph.width, glyph.y + glyph.height, null);
+    }
+
+    // Draws a non-negative number from a digit set and returns its width
+    int drawNumber(Graphics2D g2d, Glyph[] digits, int value, int x, int baselineY) {
+        int width = numberWidth(digits, value);
+        int pen = x + width;
+        do {
+            Glyph digit = digits[value % 10];
+            pen -= digit.advance;
+            draw(g2d, digit, pen, baselineY);
+            value /= 10;
+        } while (value > 0);
+        return width;
+    }
+
+    int numberWidth(Glyph[] digits, int value) {
+        int width = 0;
+        do {
+            width += digits[value % 10].advance;
+            value /= 10;
+        } while (value > 0);
+        return width;
+    }
+
+    private Image sheet(Graphics2D target) {
+        if (sheet == null) {
+            int height = Math.max(1, cursorY + rowHeight);
+            GraphicsConfiguration gc = target.getDeviceConfiguration();
+            BufferedImage image = gc != null
+                ? gc.createCompatibleImage(SHEET_WIDTH, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(SHEET_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+
+            Graphics2D g2d = image.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            for (int i = 0; i < count; i++) {
+                Glyph glyph = glyphs[i];
+                g2d.setFont(glyph.font);
+                int x = glyph.x + PADDING;
+                int y = glyph.y + glyph.baseline;
+                if (glyph.shadow != null) {
+                    g2d.setColor(glyph.shadow);
+                    g2d.drawString(glyph.text, x + glyph.shadowOffset, y + glyph.shadowOffset);
+                }
+                g2d.setColor(glyph.color);
+                g2d.drawString(glyph.text, x, y);
+            }
+            g2d.dispose();
+            measure.dispose();
+            sheet = image;
+        }
+        return sheet;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Write-behind persistence for the high score. The game loop only publishes
+// the new value; a daemon thread coalesces updates and writes them through a
+// temp file plus atomic rename, so disk latency never lands in a frame and a
+// crash mid-write never leaves a truncated file behind.
+class HighScoreStore {
+    private static final long WRITE_DELAY_NANOS = 1_000_000_000L; // Coalesce bursts of new records
+
+    private final Path file;
+    private final Path tempFile;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean flushRequested;
+    private int written; // Last value on disk, guarded by this
+    private final Thread writer;
+    private final LatencyHistogram ioTimes;
+
+    HighScoreStore(String fileName, LatencyHistogram ioTimes) {
+        this.ioTimes = ioTimes;
+        file = Paths.get(fileName);
+        tempFile = Paths.get(fileName + ".tmp");
+
+        writer = new Thread(this::writeLoop, "highscore-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::writeNow, "highscore-shutdown"));
+    }
+
+    // Reads the stored score; called once at startup before the loop runs
+    int load() {
+        FlappyEvents.HighScoreIO event = new FlappyEvents.HighScoreIO();
+        event.begin();
+        event.operation = "load";
+        long start = System.nanoTime();
+        try {
+            event.success = true;
+            if (Files.exists(file)) {
+                try (DataInputStream dis = new DataInputStream(Files.newInputStream(file))) {
+                    int score = dis.readInt();
+                    pending.set(score);
+                    synchronized (this) {
+                        written = score;
+                    }
+                    event.score = score;
+                    return score;
+                }
+            }
+        } catch (IOException e) {
+            event.success = false;
+            System.err.println("Could not load high score: " + e.getMessage());
+        } finally {
+            ioTimes.record(System.nanoTime() - start);
+            event.commit();
+        }
+        return 0;
+    }
+
+    // Publishes a new record; never blocks the caller
+    void submit(int score) {
+        pending.accumulateAndGet(score, Math::max);
+        LockSupport.unpark(writer);
+    }
+
+    // Asks the writer to persist now instead of waiting out the coalescing delay
+    void flush() {
+        flushRequested = true;
+        LockSupport.unpark(writer);
+    }
+
+    private void writeLoop() {
+        while (true) {
+            LockSupport.park(this);
+            if (!flushRequested) {
+                // Let a run of new records settle before touching the disk
+                long deadline = System.nanoTime() + WRITE_DELAY_NANOS;
+                long remaining;
+                while (!flushRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            flushRequested = false;
+            writeNow();
+        }
+    }
+
+    private synchronized void writeNow() {
+        int score = pending.get();
+        if (score == written) return;
+
+        FlappyEvents.HighScoreIO event = new FlappyEvents.HighScoreIO();
+        event.begin();
+        event.operation = "save";
+        event.score = score;
+        long start = System.nanoTime();
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tempFile.toFile());
+                 DataOutputStream dos = new DataOutputStream(fos)) {
+                dos.writeInt(score);
+                dos.flush();
+                fos.getFD().sync();
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            written = score;
+            event.success = true;
+        } catch (IOException e) {
+            System.err.println("Could not save high score: " + e.getMessage());
+        } finally {
+            ioTimes.record(System.nanoTime() - start);
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Key presses stamped with System.nanoTime() when they arrive, handed from
+// the event thread to the simulation thread. Single producer, single
+// consumer: each side owns one index and publishes it with a release store,
+// so neither locks or allocates. A full queue drops the newest key.
+final class InputQueue {
+    private static final int CAPACITY = 64; // Power of two; far more than a tick's worth of keys
+
+    private final int[] keys = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final AtomicLong head = new AtomicLong(); // Next to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // Next to write, written by the producer
+
+    boolean offer(int key, long arrivedNanos) {
+        long t = tail.get();
+        if (t - head.get() == CAPACITY) return false;
+        int index = (int) t & (CAPACITY - 1);
+        keys[index] = key;
+        times[index] = arrivedNanos;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // True when the oldest queued key arrived before the given time
+    boolean hasArrivedBefore(long nanos) {
+        long h = head.get();
+        return h != tail.get() && times[(int) h & (CAPACITY - 1)] - nanos < 0;
+    }
+
+    // The oldest key and its arrival time; only valid after hasArrivedBefore
+    int key() {
+        return keys[(int) head.get() & (CAPACITY - 1)];
+    }
+
+    long arrivedNanos() {
+        return times[(int) head.get() & (CAPACITY - 1)];
+    }
+
+    void remove() {
+        head.lazySet(head.get() + 1);
+    }
+}
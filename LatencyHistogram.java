@@ -0,0 +1,116 @@
+import java.io.PrintWriter;
+import java.util.Locale;
+
+// Log-linear latency histogram: each power of two of nanoseconds is split into
+// eight buckets, so any recorded value is known to within about 12% using a
+// fixed 488-slot array. Recording is a few arithmetic ops and never allocates.
+// Each histogram expects a single recording thread; other threads may read it
+// for display and get a slightly stale view.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    final String name;
+    long deadlineNanos; // Samples above this count as missed deadlines; 0 disables
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+    private long missed;
+
+    LatencyHistogram(String name, long deadlineNanos) {
+        this.name = name;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) max = nanos;
+        if (deadlineNanos > 0 && nanos > deadlineNanos) missed++;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    long missed() {
+        return missed;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    // Upper bound of the bucket holding the given fraction (0..1) of samples
+    long percentile(double fraction) {
+        long target = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return 0;
+    }
+
+    // Becomes a copy of other, which may be recording on another thread
+    void copyFrom(LatencyHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        total = other.total;
+        max = other.max;
+        missed = other.missed;
+    }
+
+    // Becomes the samples later recorded after it was copied into earlier, for
+    // per-interval views of a running histogram. max is known only to its
+    // bucket, like the percentiles.
+    void difference(LatencyHistogram later, LatencyHistogram earlier) {
+        max = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = later.counts[i] - earlier.counts[i];
+            if (counts[i] > 0) {
+                max = Math.min(upperBound(i), later.max);
+            }
+        }
+        count = later.count - earlier.count;
+        total = later.total - earlier.total;
+        missed = later.missed - earlier.missed;
+    }
+
+    // One summary line followed by the non-empty buckets as "upperBoundNanos count"
+    void write(PrintWriter out) {
+        out.println(String.format(Locale.ROOT,
+            "%s count=%d mean=%.0f p50=%d p90=%d p99=%d p999=%d max=%d deadline=%d missed=%d",
+            name, count, mean(), percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999),
+            max, deadlineNanos, missed));
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                out.println("  " + upperBound(i) + " " + counts[i]);
+            }
+        }
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS - 1 + SUB_BUCKET_BITS;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,352 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Pipe heights for a run, produced in chunks of CHUNK_PIPES from the run's
+// seed with their own generator, so the pipes do not depend on how many
+// random numbers the clouds used. Each height is checked against the one
+// before it: a bird leaving the previous gap must be able to climb or fall
+// into the next one in the ticks it has between the two pipes, at the speed
+// level it will be flying at by then. A height that fails is redrawn from the
+// reachable range, so every layout can be passed.
+//
+// Inline generators make each chunk when the previous one runs out, which
+// headless runs use. background() starts a daemon thread that keeps
+// CHUNKS_AHEAD chunks ready in a bounded queue, so the game's tick only
+// ever takes a finished chunk. A run's first chunk is always made inline by
+// restart(), which is cheap and lets a reset fill the screen without waiting
+// for the thread to be scheduled; the thread makes the chunks after it. Both
+// produce the same heights for a seed.
+//
+// writeState() and readState() save and restore the consumer's place in a
+// run, as part of a SaveState. A chunk depends only on the run, its index and
+// the last height before it, so a restored generator carries on from the
+// saved chunk with the same heights it would have given.
+class LevelGenerator {
+    static final int CHUNK_PIPES = 16;
+    static final int CHUNKS_AHEAD = 4;
+    static final int STATE_BYTES = 8 + 1 + 4 + 4 + 4 + 4 * CHUNK_PIPES;
+
+    // The bird's center has to stay BAND_MARGIN inside a gap to miss both pipes
+    private static final int BAND_MARGIN = FlappySimulation.BIRD_HEIGHT / 2 - FlappySimulation.COLLISION_INSET;
+
+    final int pipeSpacing;
+
+    // The generator state, used by the consumer for every chunk inline and for
+    // the first chunk of a run in the background. Reset in place for each run.
+    private final Layout layout;
+
+    // Background: the queue the thread fills, and the run it should work on,
+    // copied in by the consumer and out by the thread under request's lock
+    private final Thread thread;
+    private final BlockingQueue<Chunk> ready;
+    private final Layout request;
+    // Why the thread stopped, if it threw; the reader rethrows it rather than
+    // waiting for chunks that will never come
+    private volatile Throwable failure;
+
+    // The consumer's run and its position in it
+    private long runSeed;
+    private boolean runHardMode;
+    private int runFirstPipe;
+    private final int[] heights = new int[CHUNK_PIPES];
+    private int chunk = -1; // Index of heights in the run, -1 before the first
+    private int next = CHUNK_PIPES;
+    private long epoch;
+
+    LevelGenerator(int pipeSpacing) {
+        this(pipeSpacing, false);
+    }
+
+    private LevelGenerator(int pipeSpacing, boolean background) {
+        this.pipeSpacing = pipeSpacing;
+        layout = new Layout(pipeSpacing);
+        if (background) {
+            ready = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+            request = new Layout(pipeSpacing);
+            thread = new Thread(this::generateLoop, "level-generator");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            ready = null;
+            request = null;
+            thread = null;
+        }
+    }
+
+    static LevelGenerator background(int pipeSpacing) {
+        return new LevelGenerator(pipeSpacing, true);
+    }
+
+    // Starts a new run; the following heights come from the seed's first chunk
+    void restart(long seed, boolean hardMode) {
+        restart(seed, hardMode, 0);
+    }
+
+    // A run whose first pipe is the firstPipe-th, checked at that pipe's speed level
+    void restart(long seed, boolean hardMode, int firstPipe) {
+        epoch++;
+        runSeed = seed;
+        runHardMode = hardMode;
+        runFirstPipe = firstPipe;
+        layout.reset(seed, hardMode, epoch, firstPipe);
+        layout.chunk(heights);
+        chunk = 0;
+        next = 0;
+        publish();
+    }
+
+    // Layout: long seed, byte hard mode, int first pipe, int chunk, int next, int[CHUNK_PIPES] heights
+    void writeState(ByteBuffer out) {
+        out.putLong(runSeed);
+        out.put((byte) (runHardMode ? 1 : 0));
+        out.putInt(runFirstPipe);
+        out.putInt(chunk);
+        out.putInt(next);
+        for (int i = 0; i < CHUNK_PIPES; i++) {
+            out.putInt(heights[i]);
+        }
+    }
+
+    // Throws IllegalArgumentException if the state at offset would put the
+    // generator outside its chunk, its run's pipe count out of range, or a
+    // saved height outside its mode's range, which the next chunk would be
+    // drawn from. Reads in place, leaving in's position as it was.
+    static void checkState(ByteBuffer in, int offset) {
+        SaveState.checkRange("first pipe", in.getInt(offset + 9), 0, Integer.MAX_VALUE / 2);
+        int chunk = in.getInt(offset + 13);
+        SaveState.checkRange("level chunk", chunk, -1, Integer.MAX_VALUE / 2 / CHUNK_PIPES - 1);
+        SaveState.checkRange("level position", in.getInt(offset + 17), 0, CHUNK_PIPES);
+        // Before the first chunk there are no heights yet
+        if (chunk < 0) return;
+        boolean hardMode = in.get(offset + 8) != 0;
+        for (int i = 0; i < CHUNK_PIPES; i++) {
+            SaveState.checkRange("level height", in.getInt(offset + 21 + 4 * i),
+                minHeight(hardMode), maxHeight(hardMode) - 1);
+        }
+    }
+
+    void readState(ByteBuffer in) {
+        epoch++;
+        runSeed = in.getLong();
+        runHardMode = in.get() != 0;
+        runFirstPipe = in.getInt();
+        chunk = in.getInt();
+        next = in.getInt();
+        for (int i = 0; i < CHUNK_PIPES; i++) {
+            heights[i] = in.getInt();
+        }
+
+        // The generator picks up at the chunk after the saved one. In the
+        // background, that chunk is made here if the saved one is used up, as
+        // restart() makes the first, so the next tick never waits for the thread.
+        layout.reset(runSeed, runHardMode, epoch, runFirstPipe);
+        if (chunk >= 0) {
+            layout.chunkIndex = chunk + 1;
+            layout.pipes = runFirstPipe + (chunk + 1) * CHUNK_PIPES;
+            layout.previous = heights[CHUNK_PIPES - 1];
+        }
+        if (thread != null && next == CHUNK_PIPES) {
+            layout.chunk(heights);
+            chunk++;
+            next = 0;
+        }
+        publish();
+    }
+
+    // Hands the layout, from its next chunk on, to the background thread
+    private void publish() {
+        if (thread == null) return;
+        // Cleared before the new run is published, so no chunk of it can be
+        // cleared away; this also frees the thread if it is waiting to queue
+        // a chunk of the old run, which the reader then drops
+        ready.clear();
+        synchronized (request) {
+            request.copy(layout);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    int nextHeight() {
+        if (next == CHUNK_PIPES) {
+            nextChunk();
+            chunk++;
+            next = 0;
+        }
+        return heights[next++];
+    }
+
+    private void nextChunk() {
+        if (thread == null) {
+            layout.chunk(heights);
+            return;
+        }
+        try {
+            // Chunks of a run that was since restarted are dropped
+            while (true) {
+                if (failure != null) {
+                    throw new IllegalStateException("Pipe layout generator failed", failure);
+                }
+                Chunk chunk = ready.take();
+                if (chunk == FAILED) {
+                    throw new IllegalStateException("Pipe layout generator failed", failure);
+                }
+                if (chunk.epoch == epoch) {
+                    System.arraycopy(chunk.heights, 0, heights, 0, CHUNK_PIPES);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for pipe layouts", e);
+        }
+    }
+
+    private void generateLoop() {
+        Layout run = new Layout(pipeSpacing);
+        while (true) {
+            synchronized (request) {
+                if (run.epoch != request.epoch) {
+                    run.copy(request);
+                }
+            }
+            if (run.epoch == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                // Waits while CHUNKS_AHEAD chunks are queued; a restart clears the
+                // queue, and the stale chunk that then goes in is dropped by the reader
+                ready.put(new Chunk(run.epoch, run.chunk(new int[CHUNK_PIPES])));
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException | Error e) {
+                // Recorded before the marker is queued, so a reader that misses
+                // the marker to a restart's clear still sees it
+                failure = e;
+                try {
+                    ready.put(FAILED);
+                } catch (InterruptedException ignored) {
+                }
+                return;
+            }
+        }
+    }
+
+    // Queued by a thread that failed, to wake a reader waiting on it
+    private static final Chunk FAILED = new Chunk(0, null);
+
+    private static final class Chunk {
+        final long epoch;
+        final int[] heights;
+
+        Chunk(long epoch, int[] heights) {
+            this.epoch = epoch;
+            this.heights = heights;
+        }
+    }
+
+    // Sequential generator state for one run; epoch 0 is no run
+    private static final class Layout {
+        final int pipeSpacing;
+        final Random random = new Random(0); // Reseeded per chunk; a fixed seed skips the seed uniquifier
+        boolean hardMode;
+        long epoch;
+        long seed;
+        int firstPipe;
+        int chunkIndex;
+        int pipes; // Index in the run of the next pipe
+        int previous;
+
+        Layout(int pipeSpacing) {
+            this.pipeSpacing = pipeSpacing;
+        }
+
+        void reset(long seed, boolean hardMode, long epoch, int firstPipe) {
+            this.seed = seed;
+            this.hardMode = hardMode;
+            this.epoch = epoch;
+            this.firstPipe = firstPipe;
+            chunkIndex = 0;
+            pipes = firstPipe;
+            previous = 0;
+        }
+
+        void copy(Layout other) {
+            reset(other.seed, other.hardMode, other.epoch, other.firstPipe);
+            chunkIndex = other.chunkIndex;
+            pipes = other.pipes;
+            previous = other.previous;
+        }
+
+        // Fills heights with the next chunk and returns it
+        int[] chunk(int[] heights) {
+            // Seeded per (run seed, chunk), so a chunk never depends on how its generator was shared
+            random.setSeed(seed * 0x9E3779B97F4A7C15L + chunkIndex++);
+            int minHeight = minHeight(hardMode);
+            int maxHeight = maxHeight(hardMode);
+
+            for (int i = 0; i < CHUNK_PIPES; i++) {
+                int height = random.nextInt(maxHeight - minHeight) + minHeight;
+                // The first pipe is far enough from the start to reach anywhere
+                if (pipes > firstPipe && !passable(previous, height, pipes, hardMode, pipeSpacing)) {
+                    int low = Math.max(minHeight, lowestReachable(previous, pipes, hardMode, pipeSpacing));
+                    int high = Math.min(maxHeight - 1, highestReachable(previous, pipes, hardMode, pipeSpacing));
+                    height = low + random.nextInt(high - low + 1);
+                }
+                heights[i] = height;
+                previous = height;
+                pipes++;
+            }
+            return heights;
+        }
+    }
+
+    static int minHeight(boolean hardMode) {
+        return hardMode ? 50 : 100;
+    }
+
+    // Exclusive
+    static int maxHeight(boolean hardMode) {
+        return FlappySimulation.HEIGHT - FlappySimulation.PIPE_GAP - FlappySimulation.GROUND_HEIGHT
+            - (hardMode ? 50 : 100);
+    }
+
+    // Whether a bird that just cleared the pipe with gap top `from` can get
+    // into the gap of the next pipe, the index-th of the run, whose top is `to`
+    static boolean passable(int from, int to, int index, boolean hardMode, int pipeSpacing) {
+        return to >= lowestReachable(from, index, hardMode, pipeSpacing)
+            && to <= highestReachable(from, index, hardMode, pipeSpacing);
+    }
+
+    // Smallest gap top (highest on screen) reachable by flapping every tick
+    private static int lowestReachable(int from, int index, boolean hardMode, int pipeSpacing) {
+        int level = FlappySimulation.speedLevelFor(index); // Score is the number of pipes passed
+        double gravity = FlappySimulation.gravity(hardMode);
+        double jump = FlappySimulation.jumpVelocity(level, hardMode);
+        double climb = freeTicks(level, hardMode, pipeSpacing) * -(jump + gravity);
+        // From the top of the old gap's safe band to the bottom of the new one
+        return (int) Math.ceil(from + BAND_MARGIN - climb - (FlappySimulation.gap(hardMode) - BAND_MARGIN));
+    }
+
+    // Largest gap top (lowest on screen) reachable by falling from rest
+    private static int highestReachable(int from, int index, boolean hardMode, int pipeSpacing) {
+        int level = FlappySimulation.speedLevelFor(index);
+        double gravity = FlappySimulation.gravity(hardMode);
+        int ticks = freeTicks(level, hardMode, pipeSpacing);
+        double fall = gravity * ticks * (ticks + 1) / 2;
+        // From the bottom of the old gap's safe band to the top of the new one
+        return (int) Math.floor(from + FlappySimulation.gap(hardMode) - BAND_MARGIN + fall - BAND_MARGIN);
+    }
+
+    // Ticks between the bird's collision box leaving one pipe and reaching the next
+    private static int freeTicks(int level, boolean hardMode, int pipeSpacing) {
+        int pipeOverlap = FlappySimulation.PIPE_WIDTH - 2 * FlappySimulation.COLLISION_INSET;
+        int birdOverlap = FlappySimulation.BIRD_RIGHT - FlappySimulation.BIRD_LEFT;
+        // Pipe x is an int, so a fractional speed moves a whole extra pixel
+        int pixelsPerTick = (int) Math.ceil(FlappySimulation.pipeSpeed(level, hardMode));
+        return Math.max(0, pipeSpacing - pipeOverlap - birdOverlap) / pixelsPerTick;
+    }
+}
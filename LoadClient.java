@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+
+// Load generator for GameServer: opens --sessions connections from one
+// thread and one selector, starts a game on each and plays it from the
+// states it is sent, flapping by the tournament's chaser rule and
+// starting a new game whenever one ends. Each flap carries the client's
+// clock, echoed in the delta of the tick the server applied it on, so the
+// time until then is the flap-to-state latency a player would see; it
+// includes the wait for the server's next tick. After --warmup-s it measures
+// for --seconds and reports game ticks received per second, bandwidth per
+// session each way and the latency distribution.
+//
+//   java LoadClient [--host localhost] [--port 7777] [--sessions 1000] [--seconds 20]
+//                   [--warmup-s 3] [--hard]
+public class LoadClient {
+    private static final int IN_BUFFER = 16 * 1024;
+    private static final int OUT_BUFFER = 256;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final WireState state;
+        final ByteBuffer in = ByteBuffer.allocate(IN_BUFFER);
+        final ByteBuffer out = ByteBuffer.allocate(OUT_BUFFER);
+        long flapTick = -1; // Tick of the flap in flight, so the bird flaps once per state it was sent
+
+        Connection(SocketChannel channel, int pipeCount) {
+            this.channel = channel;
+            state = new WireState(pipeCount);
+        }
+    }
+
+    // Counted from the end of the warmup
+    private boolean measuring;
+    private long frames;
+    private long bytesIn;
+    private long bytesOut;
+    private long games;
+    private long pipes;
+    private final LatencyHistogram latency = new LatencyHistogram("flap-to-state", 0);
+
+    private final boolean hardMode;
+    private final Random random = new Random();
+
+    private LoadClient(boolean hardMode) {
+        this.hardMode = hardMode;
+    }
+
+    // The tournament's chaser, on the client's copy of the game
+    private static boolean shouldFlap(WireState state) {
+        return Tournament.Chaser.shouldFlap(state.birdY(), state.birdVelocity(), state.pipeX, state.pipeHeight,
+            state.pipeCount, state.hardMode());
+    }
+
+    private void received(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        int read = connection.channel.read(in);
+        if (read < 0) {
+            throw new IOException("Server closed the connection");
+        }
+        if (measuring) bytesIn += read;
+
+        in.flip();
+        WireState state = connection.state;
+        boolean any = false;
+        while (state.read(in)) {
+            any = true;
+            if (!measuring) continue;
+            frames++;
+            if (state.acked) {
+                latency.record(System.nanoTime() - state.ackNanos);
+            }
+        }
+        in.compact();
+        if (!any) return;
+
+        // Decide once on the newest state, not on every frame of a batch
+        if (state.gameOver()) {
+            if (measuring) {
+                games++;
+                pipes += state.score;
+            }
+            WireState.writeStart(connection.out, hardMode, random.nextLong());
+            connection.flapTick = -1;
+        } else if (state.tick != connection.flapTick && shouldFlap(state)) {
+            WireState.writeFlap(connection.out, state.tick, System.nanoTime());
+            connection.flapTick = state.tick;
+        }
+        send(connection);
+    }
+
+    private void send(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        if (out.position() == 0) return;
+        out.flip();
+        int written = connection.channel.write(out);
+        if (measuring) bytesOut += written;
+        out.compact();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        int sessions = 1000;
+        double seconds = 20;
+        double warmup = 3;
+        boolean hardMode = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--sessions": sessions = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Double.parseDouble(args[++i]); break;
+                case "--warmup-s": warmup = Double.parseDouble(args[++i]); break;
+                case "--hard": hardMode = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        LoadClient client = new LoadClient(hardMode);
+        int pipeCount = new FlappySimulation(new Random()).pipeCount;
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < sessions; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, new Connection(channel, pipeCount));
+        }
+
+        long start = System.nanoTime();
+        long measureStart = start + (long) (warmup * 1e9);
+        long end = measureStart + (long) (seconds * 1e9);
+        int connected = 0;
+        int failed = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (!client.measuring && now - measureStart >= 0) {
+                client.measuring = true;
+            }
+            if (now - end >= 0) break;
+            selector.select(Math.max(1, (end - now) / 1_000_000));
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                boolean connecting = key.isConnectable();
+                try {
+                    if (connecting) {
+                        connection.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        connected++;
+                        WireState.writeStart(connection.out, hardMode, client.random.nextLong());
+                        client.send(connection);
+                    } else if (key.isReadable()) {
+                        client.received(connection);
+                    }
+                } catch (IOException e) {
+                    if (failed++ == 0) {
+                        System.err.println("Connection failed: " + e.getMessage());
+                    }
+                    key.cancel();
+                    connection.channel.close();
+                    connected -= connecting ? 0 : 1;
+                }
+            }
+        }
+        long measured = end - measureStart;
+        selector.close();
+
+        double rate = client.frames * 1e9 / measured;
+        System.out.printf(Locale.ROOT, "%d/%d sessions connected, %d failed, %s mode, %.1f s measured%n",
+            connected, sessions, failed, hardMode ? "hard" : "normal", measured / 1e9);
+        System.out.printf(Locale.ROOT, "%.0f game ticks/s received, %.1f per session (the game runs 62.5)%n",
+            rate, rate / Math.max(1, connected));
+        System.out.printf(Locale.ROOT, "%.0f B/s down and %.0f B/s up per session, %.1f bytes per tick%n",
+            client.bytesIn * 1e9 / measured / Math.max(1, connected), client.bytesOut * 1e9 / measured / Math.max(1, connected),
+            client.bytesIn / (double) Math.max(1, client.frames));
+        System.out.printf(Locale.ROOT, "%d games ended, %.1f pipes each%n",
+            client.games, client.pipes / (double) Math.max(1, client.games));
+        LatencyHistogram latency = client.latency;
+        System.out.printf(Locale.ROOT, "flap to state: %d flaps  p50 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms%n",
+            latency.count(), latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6,
+            latency.percentile(0.999) / 1e6, latency.max() / 1e6);
+    }
+}
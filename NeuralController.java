@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.file.*;
+
+// A small neural network that decides flaps: INPUTS inputs, one hidden layer
+// of HIDDEN softsign units (x / (1 + |x|), a fraction of the cost of tanh in
+// training) and an output that flaps when positive. The inputs
+// are what a player sees, each scaled to roughly [-1, 1]: the bird's height
+// and velocity, how far ahead the next pipe is, and how far the middle of its
+// gap is above or below the bird. A genome is the flat weight array, hidden
+// units first, each as its input weights then its bias. NeuroTrainer evolves
+// genomes and checkpoints the best few of a generation, best first.
+class NeuralController implements Bot {
+    static final int MAGIC = 0x46424E4E; // "FBNN"
+    static final int VERSION = 1;
+    static final int INPUTS = 4;
+    static final int HIDDEN = 8;
+    static final int WEIGHTS = (INPUTS + 1) * HIDDEN + HIDDEN + 1;
+
+    final double[] weights;
+
+    NeuralController(double[] weights) {
+        if (weights.length != WEIGHTS) {
+            throw new IllegalArgumentException("Expected " + WEIGHTS + " weights, got " + weights.length);
+        }
+        this.weights = weights;
+    }
+
+    @Override
+    public boolean flap(GameSnapshot state) {
+        int gap = FlappySimulation.gap(state.hardMode);
+        for (int i = 0; i < state.pipeCount; i++) {
+            if (state.pipeX[i] + FlappySimulation.PIPE_WIDTH - FlappySimulation.COLLISION_INSET > FlappySimulation.BIRD_LEFT) {
+                return flap(weights, state.birdY, state.birdVelocity, state.pipeX[i], state.pipeHeight[i], gap);
+            }
+        }
+        return false;
+    }
+
+    // The network's decision for a bird facing the pipe at pipeX whose gap
+    // starts at gapTop; static so the trainer can run genomes without wrapping them
+    static boolean flap(double[] w, double birdY, double birdVelocity, int pipeX, int gapTop, int gap) {
+        double height = birdY / FlappySimulation.HEIGHT * 2 - 1;
+        double velocity = birdVelocity / 10;
+        double ahead = (pipeX - FlappySimulation.WIDTH / 4) / (double) FlappySimulation.PIPE_SPACING;
+        double toGap = (gapTop + gap / 2 - birdY) / (FlappySimulation.HEIGHT / 2);
+
+        int output = (INPUTS + 1) * HIDDEN;
+        double sum = w[output + HIDDEN];
+        for (int h = 0, i = 0; h < HIDDEN; h++, i += INPUTS + 1) {
+            double a = w[i] * height + w[i + 1] * velocity + w[i + 2] * ahead + w[i + 3] * toGap + w[i + 4];
+            sum += w[output + h] * (a / (1 + Math.abs(a)));
+        }
+        return sum > 0;
+    }
+
+    // Writes genomes with their fitness, best first, through a temp file so a
+    // reader never sees half a checkpoint
+    static void save(Path file, int generation, double[][] genomes, double[] fitness, int count) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(INPUTS);
+            out.writeByte(HIDDEN);
+            out.writeInt(generation);
+            out.writeInt(count);
+            for (int g = 0; g < count; g++) {
+                out.writeDouble(fitness[g]);
+                for (double weight : genomes[g]) {
+                    out.writeDouble(weight);
+                }
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static double[][] loadGenomes(Path file) throws IOException {
+        // Each genome is its fitness and its weights after the 15-byte header
+        long fit = (Files.size(file) - 15) / (8 * (WEIGHTS + 1));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a controller checkpoint");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int inputs = in.readUnsignedByte();
+            int hidden = in.readUnsignedByte();
+            if (inputs != INPUTS || hidden != HIDDEN) {
+                throw new IOException("Checkpoint is a " + inputs + "-" + hidden + "-1 network, expected "
+                    + INPUTS + "-" + HIDDEN + "-1");
+            }
+            in.readInt(); // Generation
+            int count = in.readInt();
+            if (count < 1 || count > fit) {
+                throw new IOException("Checkpoint claims " + count + " genomes, but the file holds at most " + fit);
+            }
+            double[][] genomes = new double[count][WEIGHTS];
+            for (double[] genome : genomes) {
+                in.readDouble(); // Fitness
+                for (int i = 0; i < WEIGHTS; i++) {
+                    genome[i] = in.readDouble();
+                }
+            }
+            return genomes;
+        }
+    }
+
+    // The best genome of a checkpoint
+    static NeuralController load(Path file) throws IOException {
+        return new NeuralController(loadGenomes(file)[0]);
+    }
+}
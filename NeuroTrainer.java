@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Evolves NeuralController genomes against the game's own rules. Every
+// generation plays each genome through the same SEEDS seeded runs, all of
+// them at once in one BatchSimulation, with a fork-join task per slice of
+// games deciding their flaps and stepping them. Fitness is pipes passed per
+// run, plus a little for time survived so early generations have a gradient.
+// The next generation keeps the ELITE best unchanged and fills the rest with
+// mutated crossovers of tournament winners. Each generation's best genomes
+// are checkpointed to <out>/latest.nn and the best seen so far to
+// <out>/best.nn, which FlappyBird --brain flies in the window.
+//
+//   java NeuroTrainer [--generations 30] [--population 256] [--seeds 8] [--threads N]
+//                     [--hard] [--from brains/best.nn] [--out brains] [--speedup-every 10] [--scaling]
+//
+// Every generation reports its game steps per second on the pool. Every
+// --speedup-every'th generation (and the first) is also played again on one
+// thread, on the same seeds, and its speedup over that is reported; timing
+// every generation that way would cost as much as the training itself on a
+// big machine. 0 turns it off. --scaling finishes by evaluating the final generation again on 1, 2, 4 ...
+// threads up to --threads and reports the speedup.
+public class NeuroTrainer {
+    private static final int MAX_TICKS = 6000; // About 100 pipes; a run that lasts this long has learned the game
+    private static final int SLICE = 256; // Games per fork-join leaf
+    private static final int ELITE = 8;
+    private static final int TOURNAMENT = 3;
+    private static final double MUTATION_RATE = 0.1;
+    private static final double MUTATION_SIZE = 0.3;
+    private static final int CHECKPOINT_GENOMES = 8;
+
+    private final int population;
+    private final int seedsPerGenome;
+    private final BatchSimulation batch;
+    private final boolean[] flap;
+    private final Random random;
+
+    private NeuroTrainer(int population, int seedsPerGenome, boolean hardMode, long seed) {
+        this.population = population;
+        this.seedsPerGenome = seedsPerGenome;
+        batch = new BatchSimulation(population * seedsPerGenome, hardMode);
+        flap = new boolean[batch.size];
+        random = new Random(seed);
+    }
+
+    // Game g is genome g / seedsPerGenome on seed g % seedsPerGenome
+    @SuppressWarnings("serial") // Never serialized
+    private final class Slice extends RecursiveTask<Integer> {
+        private final double[][] genomes;
+        private final int from;
+        private final int to;
+
+        Slice(double[][] genomes, int from, int to) {
+            this.genomes = genomes;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Games in the slice still playing after the tick
+        @Override
+        protected Integer compute() {
+            if (to - from > SLICE) {
+                int middle = (from + to) >>> 1;
+                Slice left = new Slice(genomes, from, middle);
+                left.fork();
+                return new Slice(genomes, middle, to).compute() + left.join();
+            }
+
+            for (int g = from; g < to; g++) {
+                if (batch.gameOver[g]) continue;
+                int slot = batch.nextPipe(g) * batch.size + g;
+                flap[g] = NeuralController.flap(genomes[g / seedsPerGenome], batch.birdY[g], batch.birdVelocity[g],
+                    batch.pipeX[slot], batch.pipeHeight[slot], batch.gap);
+            }
+            batch.step(flap, from, to);
+
+            int playing = 0;
+            for (int g = from; g < to; g++) {
+                if (!batch.gameOver[g] && batch.tick[g] < MAX_TICKS) playing++;
+            }
+            return playing;
+        }
+    }
+
+    // Plays every genome on every seed to the end and returns the fitness per genome
+    private double[] evaluate(ForkJoinPool pool, double[][] genomes, long[] seeds) {
+        for (int g = 0; g < batch.size; g++) {
+            batch.reset(g, seeds[g % seedsPerGenome]);
+        }
+        for (int t = 0; t < MAX_TICKS; t++) {
+            if (pool.invoke(new Slice(genomes, 0, batch.size)) == 0) break;
+        }
+
+        double[] fitness = new double[population];
+        for (int g = 0; g < batch.size; g++) {
+            fitness[g / seedsPerGenome] += (batch.score[g] + batch.tick[g] * 1e-3) / seedsPerGenome;
+        }
+        return fitness;
+    }
+
+    private long gameSteps() {
+        long steps = 0;
+        for (int g = 0; g < batch.size; g++) {
+            steps += batch.tick[g];
+        }
+        return steps;
+    }
+
+    private double[][] nextGeneration(double[][] genomes, Integer[] ranked) {
+        double[][] next = new double[population][];
+        for (int i = 0; i < ELITE && i < population; i++) {
+            next[i] = genomes[ranked[i]].clone();
+        }
+        for (int i = Math.min(ELITE, population); i < population; i++) {
+            double[] a = genomes[tournament(ranked)];
+            double[] b = genomes[tournament(ranked)];
+            double[] child = new double[NeuralController.WEIGHTS];
+            for (int w = 0; w < child.length; w++) {
+                child[w] = random.nextBoolean() ? a[w] : b[w];
+                if (random.nextDouble() < MUTATION_RATE) {
+                    child[w] += random.nextGaussian() * MUTATION_SIZE;
+                }
+            }
+            next[i] = child;
+        }
+        return next;
+    }
+
+    // Best of TOURNAMENT genomes picked at random; ranked is best first, so the lowest rank wins
+    private int tournament(Integer[] ranked) {
+        int best = random.nextInt(population);
+        for (int i = 1; i < TOURNAMENT; i++) {
+            best = Math.min(best, random.nextInt(population));
+        }
+        return ranked[best];
+    }
+
+    private double[][] initialPopulation(Path from) throws IOException {
+        double[][] genomes = new double[population][];
+        double[][] start = from != null ? NeuralController.loadGenomes(from) : new double[0][];
+        for (int i = 0; i < population; i++) {
+            if (i < start.length) {
+                genomes[i] = start[i];
+            } else if (start.length > 0) {
+                genomes[i] = start[i % start.length].clone();
+                for (int w = 0; w < NeuralController.WEIGHTS; w++) {
+                    genomes[i][w] += random.nextGaussian() * MUTATION_SIZE;
+                }
+            } else {
+                genomes[i] = new double[NeuralController.WEIGHTS];
+                for (int w = 0; w < NeuralController.WEIGHTS; w++) {
+                    genomes[i][w] = random.nextGaussian();
+                }
+            }
+        }
+        return genomes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int generations = 30;
+        int population = 256;
+        int seeds = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean hardMode = false;
+        boolean scaling = false;
+        int speedupEvery = 10;
+        Path from = null;
+        Path out = Paths.get("brains");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--generations": generations = Integer.parseInt(args[++i]); break;
+                case "--population": population = Integer.parseInt(args[++i]); break;
+                case "--seeds": seeds = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--hard": hardMode = true; break;
+                case "--scaling": scaling = true; break;
+                case "--speedup-every": speedupEvery = Integer.parseInt(args[++i]); break;
+                case "--from": from = Paths.get(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        NeuroTrainer trainer = new NeuroTrainer(population, seeds, hardMode, 1);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ForkJoinPool single = threads > 1 && speedupEvery > 0 ? new ForkJoinPool(1) : null;
+        double[][] genomes = trainer.initialPopulation(from);
+        double bestEver = Double.NEGATIVE_INFINITY;
+        long[] runSeeds = new long[seeds];
+
+        System.out.printf(Locale.ROOT, "%d genomes x %d seeds, %s mode, %d threads%n",
+            population, seeds, hardMode ? "hard" : "normal", threads);
+        for (int generation = 1; generation <= generations; generation++) {
+            // Fresh seeds every generation, so genomes cannot learn a layout by heart
+            for (int s = 0; s < seeds; s++) {
+                runSeeds[s] = trainer.random.nextLong();
+            }
+            long start = System.nanoTime();
+            double[] fitness = trainer.evaluate(pool, genomes, runSeeds);
+            long elapsed = System.nanoTime() - start;
+            long steps = trainer.gameSteps();
+            String speedup = "";
+            if (single != null && (generation == 1 || generation % speedupEvery == 0)) {
+                // The same genomes on the same seeds, so both timings do the same work
+                long singleStart = System.nanoTime();
+                trainer.evaluate(single, genomes, runSeeds);
+                long singleElapsed = System.nanoTime() - singleStart;
+                speedup = String.format(Locale.ROOT, "  speedup %.2fx on %d threads", (double) singleElapsed / elapsed,
+                    threads);
+            }
+
+            Integer[] ranked = new Integer[population];
+            for (int i = 0; i < population; i++) {
+                ranked[i] = i;
+            }
+            Arrays.sort(ranked, (a, b) -> Double.compare(fitness[b], fitness[a]));
+            double[][] best = new double[Math.min(CHECKPOINT_GENOMES, population)][];
+            double[] bestFitness = new double[best.length];
+            for (int i = 0; i < best.length; i++) {
+                best[i] = genomes[ranked[i]];
+                bestFitness[i] = fitness[ranked[i]];
+            }
+            double mean = 0;
+            for (double f : fitness) {
+                mean += f / population;
+            }
+
+            NeuralController.save(out.resolve("latest.nn"), generation, best, bestFitness, best.length);
+            boolean improved = bestFitness[0] > bestEver;
+            if (improved) {
+                bestEver = bestFitness[0];
+                NeuralController.save(out.resolve("best.nn"), generation, best, bestFitness, best.length);
+            }
+            System.out.printf(Locale.ROOT, "gen %3d  best %7.2f  mean %6.2f  %6.2f s  %6.2f M steps/s%s%s%n",
+                generation, bestFitness[0], mean, elapsed / 1e9, steps * 1e3 / elapsed, speedup, improved ? "  *" : "");
+
+            if (generation < generations) {
+                genomes = trainer.nextGeneration(genomes, ranked);
+            }
+        }
+        pool.shutdown();
+        if (single != null) {
+            single.shutdown();
+        }
+
+        if (scaling) {
+            // The same generation on the same seeds, so every run does the same work
+            double baseline = 0;
+            for (int n = 1; ; n = Math.min(n * 2, threads)) {
+                ForkJoinPool scaled = new ForkJoinPool(n);
+                long start = System.nanoTime();
+                trainer.evaluate(scaled, genomes, runSeeds);
+                long elapsed = System.nanoTime() - start;
+                scaled.shutdown();
+                double rate = trainer.gameSteps() * 1e3 / elapsed;
+                baseline = n == 1 ? rate : baseline;
+                System.out.printf(Locale.ROOT, "%3d threads  %6.2f M steps/s  speedup %.2fx  efficiency %3.0f%%%n",
+                    n, rate, rate / baseline, 100 * rate / baseline / n);
+                if (n == threads) break;
+            }
+        }
+    }
+}
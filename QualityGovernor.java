@@ -0,0 +1,101 @@
+// Trades visual effects for frame time on slow machines. The loop reports how
+// long each frame's work took, and a BudgetController steps the tier down when
+// the 90th percentile eats most of the frame budget, or back up after several
+// windows with plenty of headroom. Effects go first: the render scale only
+// drops once the tier is at its lowest, and the tier only rises again once
+// the scale is back to full.
+//
+// -Dflappy.quality=high|medium|low|minimal pins a tier; auto (the default)
+// lets the governor choose.
+class QualityGovernor {
+    static final int HIGH = 0;     // Everything on
+    static final int MEDIUM = 1;   // Half the stars, no speed trail
+    static final int LOW = 2;      // No antialiasing, star twinkle or pipe stripes
+    static final int MINIMAL = 3;  // No clouds either
+    static final String[] TIER_NAMES = {"high", "medium", "low", "minimal"};
+
+    private static final double STEP_DOWN_LOAD = 0.9; // p90 above this share of the budget
+    private static final double STEP_UP_LOAD = 0.5;   // p90 below this share counts as headroom
+
+    private final boolean pinned;
+    private int tier;
+    private final BudgetController controller = new BudgetController("frame", STEP_DOWN_LOAD, STEP_UP_LOAD);
+
+    QualityGovernor(String setting) {
+        int pinnedTier = -1;
+        for (int i = 0; i < TIER_NAMES.length; i++) {
+            if (TIER_NAMES[i].equalsIgnoreCase(setting)) {
+                pinnedTier = i;
+            }
+        }
+        if (pinnedTier < 0 && !"auto".equalsIgnoreCase(setting)) {
+            System.err.println("Unknown quality setting '" + setting + "', using auto");
+        }
+        pinned = pinnedTier >= 0;
+        tier = pinned ? pinnedTier : HIGH;
+    }
+
+    void setBudget(long frameNanos) {
+        controller.setBudget(frameNanos);
+    }
+
+    int tier() {
+        return tier;
+    }
+
+    // Whether the tier can go no lower, so the render scale may drop instead
+    boolean lowest() {
+        return pinned || tier == MINIMAL;
+    }
+
+    boolean antialiasing() {
+        return tier < LOW;
+    }
+
+    boolean speedTrail() {
+        return tier < MEDIUM;
+    }
+
+    boolean pipeStripes() {
+        return tier < LOW;
+    }
+
+    boolean clouds() {
+        return tier < MINIMAL;
+    }
+
+    // How many of the stars to draw
+    int stars(int starCount) {
+        return tier == HIGH ? starCount : starCount / 2;
+    }
+
+    boolean starTwinkle() {
+        return tier < LOW;
+    }
+
+    // Records one frame's work time and adjusts the tier at the end of each
+    // window; it only steps up while fullScale says the render scale is at 1
+    void frame(long workNanos, boolean fullScale) {
+        if (pinned) return;
+
+        int step = controller.sample(workNanos);
+        if (step == BudgetController.STEP_DOWN && tier < MINIMAL) {
+            change(tier + 1);
+        } else if (step == BudgetController.STEP_UP && tier > HIGH && fullScale) {
+            change(tier - 1);
+        }
+    }
+
+    private void change(int newTier) {
+        controller.logChange("Quality", TIER_NAMES[tier], TIER_NAMES[newTier]);
+
+        FlappyEvents.QualityChange event = new FlappyEvents.QualityChange();
+        event.from = TIER_NAMES[tier];
+        event.to = TIER_NAMES[newTier];
+        event.p90Millis = controller.p90() / 1e6;
+        event.budgetMillis = controller.budget() / 1e6;
+        event.commit();
+
+        tier = newTier;
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Which bird states can still get through the next pipe, per mode and speed
+// level, with the game's own gravity, jump strength and collision boxes. A
+// state is the pipe's offset dx from the bird, the bird's whole-pixel height
+// dy below the gap top, and the velocity as ticks k since the last flap, so
+// the velocity is exactly jump + k * gravity. A state is safe if the bird can
+// flap or not so that every tick until the pipe is behind it stays clear of
+// both halves. The pixel fraction is unknown, so a move that can land in two
+// pixel rows only counts if both rows are safe: the tables never call a state
+// safe that is not.
+//
+// Building all six tables is one fork-join pass, a task per table and residue
+// of dx modulo the pipe's pixels per tick, since those chains never read each
+// other. The result is cached on disk keyed by the physics it was built from.
+// main() flies the autopilot through generated layouts and reports any it
+// cannot clear, as a difficulty check on the level generator:
+//
+//   java ReachabilitySolver [runs per mode] [pipes per run]
+class ReachabilitySolver {
+    private static final int MAGIC = 0x46425253; // "FBRS"
+    private static final int VERSION = 1;
+    static final String CACHE_FILE = System.getProperty("flappy.solver.cache", "flappy-solver.bin.gz");
+
+    // The collision boxes from FlappySimulation.collides
+    private static final int INSET = FlappySimulation.COLLISION_INSET;
+    private static final int BIRD_LEFT = FlappySimulation.BIRD_LEFT;
+    private static final int BIRD_RIGHT = FlappySimulation.BIRD_RIGHT;
+    private static final int BAND_MARGIN = FlappySimulation.BIRD_HEIGHT / 2 - INSET;
+
+    // dx is the pipe box's left edge minus the bird box's right edge; the two
+    // overlap for DX_MIN < dx < 0 and the pipe is passed at DX_MIN. Pipes
+    // farther than DX_MAX are looked up at DX_MAX, which only has less time.
+    static final int DX_MIN = -(FlappySimulation.PIPE_WIDTH - 2 * INSET) - (BIRD_RIGHT - BIRD_LEFT);
+    static final int SCORE_DX = offset(FlappySimulation.WIDTH / 4 - FlappySimulation.PIPE_WIDTH); // Scored below this
+    static final int DX_MAX = FlappySimulation.PIPE_SPACING;
+    static final int DY_MIN = -200;
+    static final int DY_MAX = 400;
+    static final int K_MAX = 80; // Falling longer than this without a flap is never safe
+
+    private static final int DX_COUNT = DX_MAX - DX_MIN;
+    private static final int DY_COUNT = DY_MAX - DY_MIN + 1;
+    private static final int VELOCITIES = K_MAX + 1;
+    // Each dx row starts on a word, so chains filling different rows never share one
+    private static final int ROW_WORDS = (DY_COUNT * VELOCITIES + 63) / 64;
+
+    private final Table[] tables; // Normal levels 1-3, then hard levels 1-3
+
+    private ReachabilitySolver(Table[] tables) {
+        this.tables = tables;
+    }
+
+    // Physics of one mode and speed level, and its safe states
+    static final class Table {
+        final boolean hardMode;
+        final int level;
+        final double gravity;
+        final double jump;
+        final double speed;
+        final int step; // Pipe x is an int, so a fractional speed moves a whole extra pixel
+        final int gap;
+        final long[] safe = new long[DX_COUNT * ROW_WORDS];
+
+        Table(boolean hardMode, int level) {
+            this.hardMode = hardMode;
+            this.level = level;
+            gravity = FlappySimulation.gravity(hardMode);
+            jump = FlappySimulation.jumpVelocity(level, hardMode);
+            speed = FlappySimulation.pipeSpeed(level, hardMode);
+            step = (int) Math.ceil(speed);
+            gap = FlappySimulation.gap(hardMode);
+        }
+
+        boolean safe(int dx, int dy, int k) {
+            if (dx <= DX_MIN) return true;
+            if (dy < DY_MIN || dy > DY_MAX || k < 0 || k > K_MAX) return false;
+            int bit = (dy - DY_MIN) * VELOCITIES + k;
+            long word = safe[(Math.min(dx, DX_MAX) - DX_MIN - 1) * ROW_WORDS + (bit >>> 6)];
+            return (word & 1L << bit) != 0;
+        }
+
+        // Ticks since a flap that give at least this velocity
+        int velocityIndex(double velocity) {
+            return Math.max(0, (int) Math.ceil((velocity - jump) / gravity - 1e-9));
+        }
+
+        // Whether the bird clears the pipe box at dx while in pixel row dy
+        boolean clear(int dx, int dy) {
+            return dx >= 0 || dx <= DX_MIN || (dy >= BAND_MARGIN && dy <= gap - BAND_MARGIN);
+        }
+
+        // From row dy with velocity index k at dx, whether one tick with or
+        // without a flap lands only in rows that are clear and safe
+        private boolean move(int dx, int dy, int k, boolean flap) {
+            int next = flap ? 1 : k + 1;
+            if (next > K_MAX) return false;
+            double velocity = jump + next * gravity;
+            // The bird is somewhere in [dy, dy + 1), so it lands in [dy + v, dy + 1 + v)
+            int low = (int) Math.floor(dy + velocity);
+            int high = (int) Math.ceil(dy + 1 + velocity) - 1;
+            int nextDx = dx - step;
+            for (int row = low; row <= high; row++) {
+                if (!clear(nextDx, row) || !safe(nextDx, row, next)) return false;
+            }
+            return true;
+        }
+
+        void fill(int dx) {
+            int base = (dx - DX_MIN - 1) * ROW_WORDS;
+            for (int dy = DY_MIN; dy <= DY_MAX; dy++) {
+                if (!clear(dx, dy)) continue;
+                for (int k = 0; k <= K_MAX; k++) {
+                    if (move(dx, dy, k, false) || move(dx, dy, k, true)) {
+                        int bit = (dy - DY_MIN) * VELOCITIES + k;
+                        safe[base + (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+        }
+    }
+
+    // Every dx of one residue, nearest the bird first, since each row reads the one a tick closer
+    @SuppressWarnings("serial") // Never serialized
+    private static final class Chain extends RecursiveAction {
+        private final Table table;
+        private final int residue;
+
+        Chain(Table table, int residue) {
+            this.table = table;
+            this.residue = residue;
+        }
+
+        @Override
+        protected void compute() {
+            for (int dx = DX_MIN + 1 + residue; dx <= DX_MAX; dx += table.step) {
+                table.fill(dx);
+            }
+        }
+    }
+
+    Table table(boolean hardMode, int level) {
+        return tables[(hardMode ? 3 : 0) + level - 1];
+    }
+
+    static int offset(int pipeX) {
+        return pipeX + INSET - BIRD_RIGHT;
+    }
+
+    // Whether a bird at this height is clear of the ground and the ceiling
+    static boolean inBounds(double y) {
+        return y + FlappySimulation.BIRD_HEIGHT / 2 <= FlappySimulation.HEIGHT - FlappySimulation.GROUND_HEIGHT
+            && y - FlappySimulation.BIRD_HEIGHT / 2 >= 0;
+    }
+
+    static ReachabilitySolver build() {
+        Table[] tables = new Table[6];
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new Table(i >= 3, i % 3 + 1);
+            for (int residue = 0; residue < tables[i].step; residue++) {
+                chains.add(new Chain(tables[i], residue));
+            }
+        }
+        ForkJoinTask.invokeAll(chains);
+        return new ReachabilitySolver(tables);
+    }
+
+    // The cached tables if they were built from the current physics, otherwise
+    // builds them and replaces the cache
+    static ReachabilitySolver load(Path file) {
+        long key = physicsKey();
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file))))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == key) {
+                    Table[] tables = new Table[6];
+                    for (int i = 0; i < tables.length; i++) {
+                        tables[i] = new Table(i >= 3, i % 3 + 1);
+                        for (int w = 0; w < tables[i].safe.length; w++) {
+                            tables[i].safe[w] = in.readLong();
+                        }
+                    }
+                    return new ReachabilitySolver(tables);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read solver cache: " + e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        ReachabilitySolver solver = build();
+        System.out.printf(Locale.ROOT, "Built reachability tables in %d ms on %d threads%n",
+            (System.nanoTime() - start) / 1_000_000, ForkJoinPool.getCommonPoolParallelism());
+        try {
+            solver.save(file, key);
+        } catch (IOException e) {
+            System.err.println("Could not write solver cache: " + e.getMessage());
+        }
+        return solver;
+    }
+
+    private void save(Path file, long key) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(key);
+            for (Table table : tables) {
+                for (long word : table.safe) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Everything the tables depend on: the bounds, the collision boxes and
+    // the rule kernels each Table reads, per mode and level, so a change to
+    // any rule, hard mode's included, invalidates the cache
+    private static long physicsKey() {
+        long key = 17;
+        double[] values = {FlappySimulation.PIPE_WIDTH, FlappySimulation.BIRD_WIDTH, FlappySimulation.BIRD_HEIGHT,
+            FlappySimulation.WIDTH, INSET, BIRD_LEFT, BIRD_RIGHT, BAND_MARGIN, DX_MIN, DX_MAX, DY_MIN, DY_MAX, K_MAX};
+        for (double value : values) {
+            key = key * 31 + Double.doubleToLongBits(value);
+        }
+        for (boolean hardMode : new boolean[] {false, true}) {
+            key = key * 31 + Double.doubleToLongBits(FlappySimulation.gravity(hardMode));
+            key = key * 31 + FlappySimulation.gap(hardMode);
+            for (int level = 1; level <= 3; level++) {
+                key = key * 31 + Double.doubleToLongBits(FlappySimulation.jumpVelocity(level, hardMode));
+                key = key * 31 + Double.doubleToLongBits(FlappySimulation.pipeSpeed(level, hardMode));
+            }
+        }
+        return key;
+    }
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int pipes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Autopilot autopilot = new Autopilot(load(Paths.get(CACHE_FILE)));
+
+        int failures = 0;
+        Random seeds = new Random(1);
+        for (boolean hardMode : new boolean[] {false, true}) {
+            FlappySimulation sim = new FlappySimulation(new Random(), FlappySimulation.PIPE_SPACING);
+            sim.hardMode = hardMode;
+            GameSnapshot view = new GameSnapshot(sim);
+            long flaps = 0;
+            long ticks = 0;
+            long passed = 0;
+            int cleared = 0;
+            for (int run = 0; run < runs; run++) {
+                long seed = seeds.nextLong();
+                sim.reset(seed);
+                while (!sim.gameOver && sim.score < pipes) {
+                    view.copy(sim);
+                    boolean flap = autopilot.flap(view);
+                    flaps += flap ? 1 : 0;
+                    sim.step(flap);
+                }
+                ticks += sim.tick;
+                passed += sim.score;
+                if (sim.gameOver) {
+                    failures++;
+                    System.out.printf(Locale.ROOT, "%s seed %d: crashed before pipe %d at tick %d%n",
+                        hardMode ? "hard" : "normal", seed, sim.score + 1, sim.tick);
+                } else {
+                    cleared++;
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-6s %d/%d runs cleared %d pipes, %.2f flaps per pipe, %.1f%% of ticks flapping%n",
+                hardMode ? "hard" : "normal", cleared, runs, pipes,
+                flaps / (double) Math.max(1, passed), 100.0 * flaps / Math.max(1, ticks));
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
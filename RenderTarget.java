@@ -0,0 +1,131 @@
+import java.awt.*;
+import java.awt.image.VolatileImage;
+import java.util.Locale;
+
+// Offscreen image the scene is drawn into at the fixed logical resolution
+// times a render scale, then stretched to fit the window. A BudgetController
+// drops the scale a step when drawing the scene takes too much of the frame
+// budget and raises it again after a while with plenty of headroom, so a big
+// window or a slow GPU costs resolution rather than frame rate. It only drops
+// once QualityGovernor has shed every effect it can.
+//
+// Sprites and cached layers are built at the logical resolution, so the scale
+// never goes above 1. -Dflappy.renderScale=0.5..1 pins it; auto (the default)
+// lets it adapt.
+class RenderTarget {
+    static final double[] SCALES = {1.0, 0.85, 0.7, 0.6, 0.5};
+
+    private static final double STEP_DOWN_LOAD = 0.6; // Scene p90 above this share of the budget
+    private static final double STEP_UP_LOAD = 0.3;   // Scene p90 below this share counts as headroom
+
+    private final int width;
+    private final int height;
+    private final double pinnedScale;
+    private int level;
+    private VolatileImage image;
+    private boolean retained;
+
+    private final BudgetController controller = new BudgetController("scene", STEP_DOWN_LOAD, STEP_UP_LOAD);
+
+    RenderTarget(int width, int height, String setting) {
+        this.width = width;
+        this.height = height;
+        double scale = 0;
+        if (!"auto".equalsIgnoreCase(setting)) {
+            try {
+                scale = Math.max(SCALES[SCALES.length - 1], Math.min(1.0, Double.parseDouble(setting)));
+            } catch (NumberFormatException e) {
+                System.err.println("Unknown render scale '" + setting + "', using auto");
+            }
+        }
+        pinnedScale = scale;
+    }
+
+    void setBudget(long frameNanos) {
+        controller.setBudget(frameNanos);
+    }
+
+    double scale() {
+        return pinnedScale > 0 ? pinnedScale : SCALES[level];
+    }
+
+    // Whether the scale can go no higher, so the quality tier may rise instead
+    boolean fullScale() {
+        return pinnedScale > 0 || level == 0;
+    }
+
+    // Graphics for drawing the next frame in logical coordinates; the image is
+    // (re)created when the scale changes or video memory was lost
+    Graphics2D begin(GraphicsConfiguration gc) {
+        double scale = scale();
+        int imageWidth = (int) Math.ceil(width * scale);
+        int imageHeight = (int) Math.ceil(height * scale);
+        int status = image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight
+            ? VolatileImage.IMAGE_INCOMPATIBLE : image.validate(gc);
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            if (image != null) {
+                image.flush();
+            }
+            image = gc.createCompatibleVolatileImage(imageWidth, imageHeight, Transparency.OPAQUE);
+            retained = false;
+        } else if (status == VolatileImage.IMAGE_RESTORED) {
+            retained = false;
+        }
+
+        Graphics2D g2d = image.createGraphics();
+        g2d.scale(scale, scale);
+        return g2d;
+    }
+
+    // Whether the image still holds the last frame drawn into it
+    boolean retained() {
+        return retained;
+    }
+
+    // Call after drawing; false means the contents were lost and the frame must be redrawn
+    boolean end() {
+        retained = !image.contentsLost();
+        return retained;
+    }
+
+    // Stretches the frame over the window, keeping the aspect ratio with black bars
+    void present(Graphics2D g2d, int windowWidth, int windowHeight) {
+        double fit = Math.min((double) windowWidth / width, (double) windowHeight / height);
+        int drawWidth = (int) Math.round(width * fit);
+        int drawHeight = (int) Math.round(height * fit);
+        int x = (windowWidth - drawWidth) / 2;
+        int y = (windowHeight - drawHeight) / 2;
+
+        g2d.setColor(Color.BLACK);
+        if (x > 0) {
+            g2d.fillRect(0, 0, x, windowHeight);
+            g2d.fillRect(x + drawWidth, 0, windowWidth - x - drawWidth, windowHeight);
+        }
+        if (y > 0) {
+            g2d.fillRect(0, 0, windowWidth, y);
+            g2d.fillRect(0, y + drawHeight, windowWidth, windowHeight - y - drawHeight);
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, x, y, x + drawWidth, y + drawHeight, 0, 0, image.getWidth(), image.getHeight(), null);
+    }
+
+    // Records how long the scene took to draw and adjusts the scale at the end
+    // of each window; it only steps down while lowestQuality says the quality
+    // tier can go no lower
+    void frame(long sceneNanos, boolean lowestQuality) {
+        if (pinnedScale > 0) return;
+
+        int step = controller.sample(sceneNanos);
+        if (step == BudgetController.STEP_DOWN && level < SCALES.length - 1 && lowestQuality) {
+            change(level + 1);
+        } else if (step == BudgetController.STEP_UP && level > 0) {
+            change(level - 1);
+        }
+    }
+
+    private void change(int newLevel) {
+        controller.logChange("Render scale", String.format(Locale.ROOT, "%.2f", SCALES[level]),
+            String.format(Locale.ROOT, "%.2f", SCALES[newLevel]));
+        level = newLevel;
+    }
+}
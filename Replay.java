@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// A recorded run: the seed and modes it started from plus every input stamped
+// with the simulation tick it was applied on. Since FlappySimulation is fully
+// determined by its seed and the flap ticks, this is enough to replay a run
+// exactly.
+//
+// File layout (big-endian):
+//   int     magic "FBRP"
+//   byte    version
+//   long    seed
+//   byte    flags (1 = hard mode, 2 = night mode)
+//   varint  (tick delta << 2 | type) per event, types FLAP, PAUSE, RESUME
+//   varint  (tick delta << 2 | END), then varint final score, byte game over
+class Replay {
+    static final int MAGIC = 0x46425250; // "FBRP"
+    static final int VERSION = 2; // 2: pipes from LevelGenerator, so version 1 runs no longer replay
+
+    static final int FLAP = 0;
+    static final int PAUSE = 1;
+    static final int RESUME = 2;
+    static final int END = 3;
+
+    private static final int FLAG_HARD = 1;
+    private static final int FLAG_NIGHT = 2;
+
+    final long seed;
+    final boolean hardMode;
+    final boolean nightMode;
+
+    private long[] ticks = new long[256];
+    private byte[] types = new byte[256];
+    private int count;
+
+    long endTick = -1; // -1 until the run has ended
+    int finalScore;
+    boolean endedInGameOver;
+
+    Replay(long seed, boolean hardMode, boolean nightMode) {
+        this.seed = seed;
+        this.hardMode = hardMode;
+        this.nightMode = nightMode;
+    }
+
+    void add(int type, long tick) {
+        if (count == ticks.length) {
+            ticks = Arrays.copyOf(ticks, count * 2);
+            types = Arrays.copyOf(types, count * 2);
+        }
+        ticks[count] = tick;
+        types[count] = (byte) type;
+        count++;
+    }
+
+    // Forgets the inputs from the tick on, after the run was rewound to it
+    void truncate(long tick) {
+        while (count > 0 && ticks[count - 1] >= tick) {
+            count--;
+        }
+    }
+
+    void end(long tick, int score, boolean gameOver) {
+        endTick = tick;
+        finalScore = score;
+        endedInGameOver = gameOver;
+    }
+
+    int eventCount() {
+        return count;
+    }
+
+    long tickAt(int i) {
+        return ticks[i];
+    }
+
+    int typeAt(int i) {
+        return types[i];
+    }
+
+    // A simulation in the state the recorded run started from
+    FlappySimulation newSimulation() {
+        FlappySimulation sim = new FlappySimulation();
+        sim.hardMode = hardMode;
+        sim.reset(seed);
+        return sim;
+    }
+
+    void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeByte((hardMode ? FLAG_HARD : 0) | (nightMode ? FLAG_NIGHT : 0));
+
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarint(out, (ticks[i] - last) << 2 | types[i]);
+            last = ticks[i];
+        }
+        writeVarint(out, (endTick - last) << 2 | END);
+        writeVarint(out, finalScore);
+        out.writeBoolean(endedInGameOver);
+        out.flush();
+    }
+
+    static Replay read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        long seed = in.readLong();
+        int flags = in.readUnsignedByte();
+        Replay replay = new Replay(seed, (flags & FLAG_HARD) != 0, (flags & FLAG_NIGHT) != 0);
+
+        long tick = 0;
+        while (true) {
+            long entry = readVarint(in);
+            tick += entry >>> 2;
+            int type = (int) (entry & 3);
+            if (type == END) {
+                replay.end(tick, (int) readVarint(in), in.readBoolean());
+                return replay;
+            }
+            replay.add(type, tick);
+        }
+    }
+
+    void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    static Replay load(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Locale;
+
+// Feeds a recorded run back into a simulation tick by tick. FlappyBird uses it
+// for 1x playback in the window; main() replays files headless at full speed
+// and checks each one still ends with its recorded score, so saved runs work
+// as regression fixtures:
+//
+//   java ReplayPlayer replays/run-20250101-120000.fbr [more.fbr | dir ...]
+//
+// Exits non-zero if any replay diverges.
+public class ReplayPlayer {
+    private final Replay replay;
+    private int next;
+
+    ReplayPlayer(Replay replay) {
+        this.replay = replay;
+    }
+
+    Replay replay() {
+        return replay;
+    }
+
+    // Consumes the events stamped with this tick; true if the bird flaps
+    boolean flapAt(long tick) {
+        boolean flap = false;
+        while (next < replay.eventCount() && replay.tickAt(next) <= tick) {
+            if (replay.typeAt(next) == Replay.FLAP) {
+                flap = true;
+            }
+            next++;
+        }
+        return flap;
+    }
+
+    // Continues from the tick, after the simulation was rewound to it
+    void seek(long tick) {
+        next = 0;
+        while (next < replay.eventCount() && replay.tickAt(next) < tick) {
+            next++;
+        }
+    }
+
+    boolean finished(long tick) {
+        return tick >= replay.endTick;
+    }
+
+    // Runs the whole replay as fast as possible and returns the final state
+    static FlappySimulation simulate(Replay replay) {
+        FlappySimulation sim = replay.newSimulation();
+        ReplayPlayer player = new ReplayPlayer(replay);
+        while (!sim.gameOver && !player.finished(sim.tick)) {
+            sim.step(player.flapAt(sim.tick));
+        }
+        return sim;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ReplayPlayer <replay.fbr | directory> ...");
+            System.exit(2);
+        }
+
+        int failures = 0;
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.fbr")) {
+                    for (Path file : files) {
+                        failures += verify(file) ? 0 : 1;
+                    }
+                }
+            } else {
+                failures += verify(path) ? 0 : 1;
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static boolean verify(Path file) {
+        Replay replay;
+        try {
+            replay = Replay.load(file);
+        } catch (IOException e) {
+            System.out.println(file + ": FAILED to read: " + e.getMessage());
+            return false;
+        }
+
+        long start = System.nanoTime();
+        FlappySimulation sim = simulate(replay);
+        long nanos = Math.max(1, System.nanoTime() - start);
+
+        boolean ok = sim.tick == replay.endTick && sim.score == replay.finalScore
+            && sim.gameOver == replay.endedInGameOver;
+        System.out.println(String.format(Locale.ROOT,
+            "%s: %s score %d at tick %d (recorded %d at tick %d%s), %.0f ticks/sec",
+            file, ok ? "ok" : "DIVERGED", sim.score, sim.tick, replay.finalScore, replay.endTick,
+            replay.endedInGameOver ? ", game over" : "", sim.tick * 1e9 / nanos));
+        return ok;
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+// The whole of a run in a fixed binary layout: everything step() reads or
+// writes, including the clouds, the cloud generator's state, the animation
+// counters and the level generator's place in the layout, so a restored
+// simulation steps exactly as the saved one would have. Writing or reading
+// one is a few hundred bytes of puts and gets, with no reflection and no
+// allocation. The size depends only on the pipe and cloud counts, so every
+// field is at a fixed offset and states can sit side by side in one buffer,
+// as StateHistory keeps them.
+//
+// Layout (big-endian):
+//   int     magic "FBSS"
+//   byte    version
+//   byte    pipe count
+//   byte    cloud count
+//   byte    front end bits, stored for the caller and not interpreted
+//   short   pipe spacing
+//   long    tick
+//   double  birdY, prevBirdY, birdVelocity
+//   int     score, speedLevel, birdAnimationFrame, animationDelay, backgroundOffset, pipeHead
+//   byte    flags (1 = hard mode, 2 = game over)
+//   long    cloud generator state
+//   per pipe, in slot order: int x, int previous x, int height, byte passed
+//   per cloud: int x, y, width, height, speed
+//   LevelGenerator.STATE_BYTES of level generator state
+final class SaveState {
+    static final int MAGIC = 0x46425353; // "FBSS"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 1 + 1 + 1 + 1 + 2;
+    private static final int PIPE_BYTES = 4 + 4 + 4 + 1;
+    private static final int CLOUD_BYTES = 5 * 4;
+
+    private static final int FLAG_HARD = 1;
+    private static final int FLAG_GAME_OVER = 2;
+
+    private SaveState() {
+    }
+
+    static int size(FlappySimulation sim) {
+        return HEADER_BYTES + 8 + 3 * 8 + 6 * 4 + 1 + 8
+            + sim.pipeCount * PIPE_BYTES + sim.clouds.size() * CLOUD_BYTES + LevelGenerator.STATE_BYTES;
+    }
+
+    // out needs size(sim) bytes free
+    static void write(FlappySimulation sim, int frontBits, ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) sim.pipeCount);
+        out.put((byte) sim.clouds.size());
+        out.put((byte) frontBits);
+        out.putShort((short) sim.pipeSpacing);
+
+        out.putLong(sim.tick);
+        out.putDouble(sim.birdY);
+        out.putDouble(sim.prevBirdY);
+        out.putDouble(sim.birdVelocity);
+        out.putInt(sim.score);
+        out.putInt(sim.speedLevel);
+        out.putInt(sim.birdAnimationFrame);
+        out.putInt(sim.animationDelay);
+        out.putInt(sim.backgroundOffset);
+        out.putInt(sim.pipeHead);
+        out.put((byte) ((sim.hardMode ? FLAG_HARD : 0) | (sim.gameOver ? FLAG_GAME_OVER : 0)));
+        out.putLong(sim.random.state());
+
+        for (int i = 0; i < sim.pipeCount; i++) {
+            out.putInt(sim.pipeX[i]);
+            out.putInt(sim.pipePrevX[i]);
+            out.putInt(sim.pipeHeight[i]);
+            out.put((byte) (sim.pipePassed[i] ? 1 : 0));
+        }
+        for (int i = 0; i < sim.clouds.size(); i++) {
+            FlappySimulation.Cloud cloud = sim.clouds.get(i);
+            out.putInt(cloud.x);
+            out.putInt(cloud.y);
+            out.putInt(cloud.width);
+            out.putInt(cloud.height);
+            out.putInt(cloud.speed);
+        }
+        sim.levels.writeState(out);
+    }
+
+    // Restores sim from a state written for a simulation of the same shape and
+    // returns the front end bits. A state that is not one, is from another
+    // version or shape, or has a field out of range that the game indexes,
+    // divides by, draws from a sprite table or lays out pipes from throws
+    // before sim is touched.
+    static int read(ByteBuffer in, FlappySimulation sim) {
+        int start = in.position();
+        if (in.remaining() < HEADER_BYTES || in.getInt(start) != MAGIC) {
+            throw new IllegalArgumentException("Not a save state");
+        }
+        int version = in.get(start + 4) & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported save state version " + version);
+        }
+        int pipes = in.get(start + 5) & 0xFF;
+        int clouds = in.get(start + 6) & 0xFF;
+        int spacing = in.getShort(start + 8);
+        if (pipes != sim.pipeCount || clouds != sim.clouds.size() || spacing != sim.pipeSpacing) {
+            throw new IllegalArgumentException("Save state is for " + pipes + " pipes " + spacing + " apart and "
+                + clouds + " clouds, not " + sim.pipeCount + " pipes " + sim.pipeSpacing + " apart and "
+                + sim.clouds.size() + " clouds");
+        }
+        if (in.remaining() < size(sim)) {
+            throw new IllegalArgumentException("Save state is truncated");
+        }
+        checkRanges(in, start, sim);
+        int frontBits = in.get(start + 7) & 0xFF;
+        in.position(start + HEADER_BYTES);
+
+        sim.tick = in.getLong();
+        sim.birdY = in.getDouble();
+        sim.prevBirdY = in.getDouble();
+        sim.birdVelocity = in.getDouble();
+        sim.score = in.getInt();
+        sim.speedLevel = in.getInt();
+        sim.birdAnimationFrame = in.getInt();
+        sim.animationDelay = in.getInt();
+        sim.backgroundOffset = in.getInt();
+        sim.pipeHead = in.getInt();
+        int flags = in.get();
+        sim.hardMode = (flags & FLAG_HARD) != 0;
+        sim.gameOver = (flags & FLAG_GAME_OVER) != 0;
+        sim.random.setState(in.getLong());
+
+        for (int i = 0; i < sim.pipeCount; i++) {
+            sim.pipeX[i] = in.getInt();
+            sim.pipePrevX[i] = in.getInt();
+            sim.pipeHeight[i] = in.getInt();
+            sim.pipePassed[i] = in.get() != 0;
+        }
+        for (int i = 0; i < sim.clouds.size(); i++) {
+            FlappySimulation.Cloud cloud = sim.clouds.get(i);
+            cloud.x = in.getInt();
+            cloud.y = in.getInt();
+            cloud.width = in.getInt();
+            cloud.height = in.getInt();
+            cloud.speed = in.getInt();
+        }
+        sim.levels.readState(in);
+        return frontBits;
+    }
+
+    // The fields a corrupt or hand-edited state could set to something the
+    // game would crash on later, read in place: the bird's doubles, the
+    // counters, every pipe's height against its mode's range, every cloud's
+    // size against the cloud sprite table and its speed, and the level
+    // generator's place and saved heights
+    private static void checkRanges(ByteBuffer in, int start, FlappySimulation sim) {
+        int body = start + HEADER_BYTES;
+        double birdY = in.getDouble(body + 8);
+        double birdVelocity = in.getDouble(body + 24);
+        if (!Double.isFinite(birdY) || !Double.isFinite(in.getDouble(body + 16)) || !Double.isFinite(birdVelocity)) {
+            throw new IllegalArgumentException("Save state has a bird position or velocity that is not a number");
+        }
+        checkRange("score", in.getInt(body + 32), 0, Integer.MAX_VALUE);
+        checkRange("speed level", in.getInt(body + 36), 1, FlappySimulation.BIRD_SPEEDS.length);
+        checkRange("animation frame", in.getInt(body + 40), 0, 2);
+        checkRange("animation delay", in.getInt(body + 44), 0, Integer.MAX_VALUE);
+        checkRange("background offset", in.getInt(body + 48), 0, FlappySimulation.WIDTH - 1);
+        checkRange("pipe head", in.getInt(body + 52), 0, sim.pipeCount - 1);
+        boolean hardMode = (in.get(body + 56) & FLAG_HARD) != 0;
+        int pipes = body + 8 + 3 * 8 + 6 * 4 + 1 + 8;
+        for (int i = 0; i < sim.pipeCount; i++) {
+            checkRange("pipe height", in.getInt(pipes + i * PIPE_BYTES + 8),
+                LevelGenerator.minHeight(hardMode), LevelGenerator.maxHeight(hardMode) - 1);
+        }
+        int clouds = pipes + sim.pipeCount * PIPE_BYTES;
+        for (int i = 0; i < sim.clouds.size(); i++) {
+            int cloud = clouds + i * CLOUD_BYTES;
+            checkRange("cloud width", in.getInt(cloud + 8), FlappySimulation.CLOUD_MIN_WIDTH,
+                FlappySimulation.CLOUD_MIN_WIDTH + FlappySimulation.CLOUD_WIDTHS - 1);
+            checkRange("cloud height", in.getInt(cloud + 12), FlappySimulation.CLOUD_MIN_HEIGHT,
+                FlappySimulation.CLOUD_MIN_HEIGHT + FlappySimulation.CLOUD_HEIGHTS - 1);
+            checkRange("cloud speed", in.getInt(cloud + 16), 1, Integer.MAX_VALUE);
+        }
+        LevelGenerator.checkState(in, start + size(sim) - LevelGenerator.STATE_BYTES);
+    }
+
+    static void checkRange(String field, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Save state has " + field + " " + value + ", not " + min + " to " + max);
+        }
+    }
+
+    // Writes through a temp file so a crash never leaves half a save
+    static void save(Path file, byte[] state) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, state);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // The state as bytes, for saving off the simulation thread
+    static byte[] toBytes(FlappySimulation sim, int frontBits) {
+        ByteBuffer out = ByteBuffer.allocate(size(sim));
+        write(sim, frontBits, out);
+        return out.array();
+    }
+
+    static int load(Path file, FlappySimulation sim) throws IOException {
+        try {
+            return read(ByteBuffer.wrap(Files.readAllBytes(file)), sim);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free triple buffer handing snapshots from the simulation thread to the
+// renderer. The writer fills its back snapshot and swaps it into the middle
+// slot; the reader swaps the middle out only when something new was published.
+// Neither side ever waits, and neither touches a snapshot the other is using.
+final class SnapshotBuffer {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // Set in middle when it holds an unread snapshot
+
+    private final GameSnapshot[] snapshots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // Writer only
+    private int front = 2; // Reader only
+
+    SnapshotBuffer(FlappySimulation sim) {
+        snapshots = new GameSnapshot[] {new GameSnapshot(sim), new GameSnapshot(sim), new GameSnapshot(sim)};
+    }
+
+    // The snapshot the writer may fill next
+    GameSnapshot back() {
+        return snapshots[back];
+    }
+
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // The newest published snapshot; stays valid until the next call
+    GameSnapshot latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return snapshots[front];
+    }
+}
@@ -0,0 +1,55 @@
+import java.nio.ByteBuffer;
+
+// The last few ticks of a run as SaveStates, side by side in one buffer
+// allocated up front, so recording every tick and jumping back to any of
+// them never allocates. FlappyBird rewinds practice runs and replays with it,
+// and GameServer rolls a session back to apply a flap that arrived late and
+// steps it forward again.
+final class StateHistory {
+    private final ByteBuffer states;
+    private final int stateBytes;
+    private final long[] ticks;
+    private int newest = -1;
+    private int count;
+
+    StateHistory(FlappySimulation sim, int capacity) {
+        stateBytes = SaveState.size(sim);
+        states = ByteBuffer.allocateDirect(stateBytes * capacity);
+        ticks = new long[capacity];
+    }
+
+    void clear() {
+        newest = -1;
+        count = 0;
+    }
+
+    // Keeps the state the simulation is in now, replacing the oldest if full
+    void record(FlappySimulation sim) {
+        newest = (newest + 1) % ticks.length;
+        count = Math.min(count + 1, ticks.length);
+        ticks[newest] = sim.tick;
+        states.position(newest * stateBytes);
+        SaveState.write(sim, 0, states);
+    }
+
+    // Oldest tick held, or -1 if none
+    long oldestTick() {
+        return count == 0 ? -1 : ticks[(newest - count + 1 + ticks.length) % ticks.length];
+    }
+
+    // Puts the simulation back in the state it was in at the tick and forgets
+    // the states after it. False, changing nothing, if that tick is not held.
+    boolean restore(long tick, FlappySimulation sim) {
+        for (int i = 0; i < count; i++) {
+            int slot = (newest - i + ticks.length) % ticks.length;
+            if (ticks[slot] == tick) {
+                states.position(slot * stateBytes);
+                SaveState.read(states, sim);
+                newest = slot;
+                count -= i;
+                return true;
+            }
+        }
+        return false;
+    }
+}
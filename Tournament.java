@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Plays bots against each other on the same layouts and ranks them. Every
+// bot flies every seed in normal and hard mode from each speed level, the
+// second and third starting at the score where that level begins, so a match
+// is (bot, seed, mode, level) and ends at a crash or after --pipes pipes.
+// All matches run at once, each on its own virtual thread where the JDK has
+// them and on a pool of one thread per core where it does not. A virtual
+// thread keeps its carrier until it blocks, so the wall time of a decision
+// is the bot's own work either way.
+//
+// A decision that takes longer than --budget-ms is dropped, as a real tick
+// would not wait for it, and the bird does not flap that tick. A match still
+// running after --timeout-s is abandoned and scored as it stood. The board is
+// ranked by mean pipes per match, with the mean per mode and level, runs
+// that reached the pipe limit, late decisions and abandoned matches.
+//
+//   java Tournament [--seeds 10] [--pipes 100] [--budget-ms 4] [--timeout-s 120]
+//                   [--brain brains/best.nn ...] [--bot MyBot ...] [--no-solver]
+public class Tournament {
+    private static final int[] START_SCORES = {0, FlappySimulation.SPEED_THRESHOLDS[0], FlappySimulation.SPEED_THRESHOLDS[1]};
+    private static final String[] MODE_LABELS = {"N", "H"};
+
+    private static final class Entry {
+        final String name;
+        final Supplier<Bot> factory; // A fresh bot per match, as bots may keep state
+
+        Entry(String name, Supplier<Bot> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    private static final class Match {
+        final Entry entry;
+        final long seed;
+        final boolean hardMode;
+        final int level;
+
+        // Written by the match's thread, read once it is done or abandoned
+        volatile int pipes;
+        volatile boolean finished;
+        volatile boolean abandoned;
+        volatile int late;
+        volatile long decisions;
+        volatile long decisionNanos;
+        volatile long maxDecisionNanos;
+
+        Match(Entry entry, long seed, boolean hardMode, int level) {
+            this.entry = entry;
+            this.seed = seed;
+            this.hardMode = hardMode;
+            this.level = level;
+        }
+
+        void play(int pipeLimit, long budgetNanos) {
+            Bot bot = entry.factory.get();
+            FlappySimulation sim = new FlappySimulation(new Random());
+            sim.hardMode = hardMode;
+            int startScore = START_SCORES[level - 1];
+            sim.reset(seed, startScore);
+            GameSnapshot view = new GameSnapshot(sim);
+            view.gameStarted = true;
+            view.autopilot = true;
+            view.runSeed = seed;
+
+            long total = 0;
+            long max = 0;
+            int dropped = 0;
+            while (!sim.gameOver && sim.score - startScore < pipeLimit && !Thread.currentThread().isInterrupted()) {
+                view.copy(sim);
+                long start = System.nanoTime();
+                boolean flap = bot.flap(view);
+                long elapsed = System.nanoTime() - start;
+                total += elapsed;
+                max = Math.max(max, elapsed);
+                if (elapsed > budgetNanos) {
+                    dropped++;
+                    flap = false;
+                }
+                sim.step(flap);
+                pipes = sim.score - startScore;
+                late = dropped;
+                decisions = sim.tick;
+                decisionNanos = total;
+                maxDecisionNanos = max;
+            }
+            finished = !sim.gameOver && sim.score - startScore >= pipeLimit;
+        }
+    }
+
+    // Leaderboard row: one bot's matches added up
+    private static final class Standing {
+        final String name;
+        int matches;
+        long pipes;
+        int best;
+        int finished;
+        int late;
+        int abandoned;
+        long decisions;
+        long decisionNanos;
+        long maxDecisionNanos;
+        final long[] levelPipes = new long[2 * START_SCORES.length];
+        final int[] levelMatches = new int[2 * START_SCORES.length];
+
+        Standing(String name) {
+            this.name = name;
+        }
+
+        void add(Match match) {
+            matches++;
+            pipes += match.pipes;
+            best = Math.max(best, match.pipes);
+            finished += match.finished ? 1 : 0;
+            late += match.late;
+            abandoned += match.abandoned ? 1 : 0;
+            decisions += match.decisions;
+            decisionNanos += match.decisionNanos;
+            maxDecisionNanos = Math.max(maxDecisionNanos, match.maxDecisionNanos);
+            int column = (match.hardMode ? START_SCORES.length : 0) + match.level - 1;
+            levelPipes[column] += match.pipes;
+            levelMatches[column]++;
+        }
+
+        double mean() {
+            return matches == 0 ? 0 : pipes / (double) matches;
+        }
+    }
+
+    // The reference bot: flaps when it would be below three quarters of the way
+    // down the next gap two ticks from now, so it rides the lower half of the
+    // gap, where a flap has room to climb
+    static final class Chaser implements Bot {
+        @Override
+        public boolean flap(GameSnapshot state) {
+            return shouldFlap(state.birdY, state.birdVelocity, state.pipeX, state.pipeHeight, state.pipeCount,
+                state.hardMode);
+        }
+
+        // The rule on plain values with the pipes in screen order, for players
+        // that see the game some other way, such as LoadClient
+        static boolean shouldFlap(double birdY, double birdVelocity, int[] pipeX, int[] pipeHeight, int pipeCount,
+                boolean hardMode) {
+            for (int i = 0; i < pipeCount; i++) {
+                if (ahead(pipeX[i])) {
+                    return flapsUnder(birdY, birdVelocity, pipeHeight[i], FlappySimulation.gap(hardMode));
+                }
+            }
+            return birdY > FlappySimulation.HEIGHT / 2;
+        }
+
+        // Whether a pipe at pipeX is still ahead of the bird; the chaser aims
+        // for the nearest such pipe
+        static boolean ahead(int pipeX) {
+            return pipeX + FlappySimulation.PIPE_WIDTH > FlappySimulation.WIDTH / 4 - FlappySimulation.BIRD_WIDTH / 2;
+        }
+
+        // Flaps whenever the bird would be below three quarters of the way down
+        // the gap two ticks from now
+        static boolean flapsUnder(double birdY, double birdVelocity, int gapTop, int gap) {
+            return birdY + 2 * birdVelocity > gapTop + gap * 3 / 4;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor where the JDK has it (21+),
+    // looked up reflectively so this still builds on 17
+    private static Method virtualThreads() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService matchExecutor(Method virtualThreads) {
+        try {
+            if (virtualThreads != null) {
+                return (ExecutorService) virtualThreads.invoke(null);
+            }
+        } catch (ReflectiveOperationException e) {
+            System.err.println("No virtual threads, using a pool: " + e);
+        }
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "tournament-match");
+            thread.setDaemon(true); // A bot that never returns must not keep the JVM up
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) {
+        int seeds = 10;
+        int pipeLimit = 100;
+        long budgetNanos = 4_000_000L;
+        long timeoutNanos = 120_000_000_000L;
+        boolean solver = true;
+        List<Entry> entries = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seeds": seeds = Integer.parseInt(args[++i]); break;
+                    case "--pipes": pipeLimit = Integer.parseInt(args[++i]); break;
+                    case "--budget-ms": budgetNanos = (long) (Double.parseDouble(args[++i]) * 1e6); break;
+                    case "--timeout-s": timeoutNanos = (long) (Double.parseDouble(args[++i]) * 1e9); break;
+                    case "--no-solver": solver = false; break;
+                    case "--brain": {
+                        String file = args[++i];
+                        double[] weights = NeuralController.load(Paths.get(file)).weights;
+                        entries.add(new Entry(Paths.get(file).getFileName().toString(), () -> new NeuralController(weights)));
+                        break;
+                    }
+                    case "--bot": {
+                        String className = args[++i];
+                        Bot.create(className); // Fail now rather than in every match
+                        entries.add(new Entry(className, () -> {
+                            try {
+                                return Bot.create(className);
+                            } catch (ReflectiveOperationException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }));
+                        break;
+                    }
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        System.exit(2);
+                }
+            }
+        } catch (IOException | ReflectiveOperationException | ClassCastException e) {
+            System.err.println("Could not load a bot: " + e);
+            System.exit(1);
+        }
+        entries.add(0, new Entry("chaser", Chaser::new));
+        if (solver) {
+            // One set of tables, read by every solver bot at once
+            ReachabilitySolver tables = ReachabilitySolver.load(Paths.get(ReachabilitySolver.CACHE_FILE));
+            entries.add(0, new Entry("solver", () -> new Autopilot(tables)));
+        }
+
+        List<Match> matches = new ArrayList<>();
+        Random seedSource = new Random(1);
+        for (int s = 0; s < seeds; s++) {
+            long seed = seedSource.nextLong();
+            for (boolean hardMode : new boolean[] {false, true}) {
+                for (int level = 1; level <= START_SCORES.length; level++) {
+                    for (Entry entry : entries) {
+                        matches.add(new Match(entry, seed, hardMode, level));
+                    }
+                }
+            }
+        }
+
+        Method virtualThreads = virtualThreads();
+        System.out.printf(Locale.ROOT, "%d bots, %d matches of up to %d pipes, %.1f ms per decision, on %s%n",
+            entries.size(), matches.size(), pipeLimit, budgetNanos / 1e6, virtualThreads != null ? "virtual threads"
+                : "a pool of " + Runtime.getRuntime().availableProcessors() + " threads");
+        ExecutorService executor = matchExecutor(virtualThreads);
+        List<Future<?>> running = new ArrayList<>(matches.size());
+        int limit = pipeLimit;
+        long budget = budgetNanos;
+        long start = System.nanoTime();
+        for (Match match : matches) {
+            running.add(executor.submit(() -> match.play(limit, budget)));
+        }
+
+        // One deadline for the whole tournament: every match started with it
+        long deadline = start + timeoutNanos;
+        for (int i = 0; i < matches.size(); i++) {
+            Match match = matches.get(i);
+            Future<?> future = running.get(i);
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                match.abandoned = true;
+            } catch (ExecutionException e) {
+                // A bot that throws loses the match where it stood
+                System.err.printf(Locale.ROOT, "%s crashed on seed %d: %s%n", match.entry.name, match.seed, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        executor.shutdownNow();
+        long elapsed = System.nanoTime() - start;
+
+        List<Standing> board = new ArrayList<>();
+        for (Entry entry : entries) {
+            Standing standing = new Standing(entry.name);
+            for (Match match : matches) {
+                if (match.entry == entry) standing.add(match);
+            }
+            board.add(standing);
+        }
+        board.sort((a, b) -> Double.compare(b.mean(), a.mean()));
+
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-4s %-20s %7s", "rank", "bot", "mean"));
+        for (int mode = 0; mode < 2; mode++) {
+            for (int level = 1; level <= START_SCORES.length; level++) {
+                header.append(String.format(Locale.ROOT, " %6s", MODE_LABELS[mode] + level));
+            }
+        }
+        header.append(String.format(Locale.ROOT, " %5s %6s %6s %6s %9s %9s",
+            "best", "full", "late", "abandn", "mean us", "max us"));
+        System.out.println(header);
+        for (int rank = 0; rank < board.size(); rank++) {
+            Standing standing = board.get(rank);
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-4d %-20s %7.1f",
+                rank + 1, standing.name, standing.mean()));
+            for (int column = 0; column < standing.levelPipes.length; column++) {
+                row.append(String.format(Locale.ROOT, " %6.1f",
+                    standing.levelPipes[column] / (double) Math.max(1, standing.levelMatches[column])));
+            }
+            row.append(String.format(Locale.ROOT, " %5d %3d/%-2d %6d %6d %9.1f %9.1f",
+                standing.best, standing.finished, standing.matches, standing.late, standing.abandoned,
+                standing.decisionNanos / 1e3 / Math.max(1, standing.decisions), standing.maxDecisionNanos / 1e3));
+            System.out.println(row);
+        }
+        System.out.printf(Locale.ROOT, "%.1f s%n", elapsed / 1e9);
+    }
+}
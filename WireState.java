@@ -0,0 +1,303 @@
+import java.nio.ByteBuffer;
+
+// The game as GameServer sends it: the bird in 1/SUBPIXELS pixel fixed
+// point, the pipes in screen order, score, speed level and flags. The server
+// keeps one per session as the state its client was last sent and encodes
+// each tick as the difference from it; the client keeps one as its copy of
+// the game and applies the frames to it. Both sides update theirs from the
+// same quantized values, so the copies never drift apart.
+//
+// Frames, server to client, one length byte then the payload:
+//   KEYFRAME  byte type, byte fields (ACK only), long tick, int birdY, int birdVelocity,
+//             varint score, byte speed level, byte flags, byte pipe count,
+//             (int x, short height) per pipe, then the ACK field if set
+//   DELTA     byte type, byte fields, varint ticks since the last frame, then per field set:
+//             BIRD   zigzag varint birdY and birdVelocity change
+//             PIPES  byte pipes recycled (r), zigzag varint x change of each surviving
+//                    pipe, then (zigzag varint x past the previous last pipe, varint height)
+//                    per new pipe
+//             STATUS varint score, byte speed level, byte flags
+//             ACK    long client time of the flap this tick applied
+//
+// Messages, client to server, fixed size by type:
+//   START     byte type, byte flags (FLAG_HARD), long seed
+//   FLAP      byte type, long tick the flap is meant for, long client time
+final class WireState {
+    static final int SUBPIXELS = 64;
+    static final int MAX_FRAME = 1 + 255;
+
+    static final int KEYFRAME = 1;
+    static final int DELTA = 2;
+
+    static final int START = 1;
+    static final int FLAP = 2;
+    static final int START_SIZE = 10;
+    static final int FLAP_SIZE = 17;
+
+    // DELTA fields; a keyframe can carry ACK too
+    static final int BIRD = 1;
+    static final int PIPES = 2;
+    static final int STATUS = 4;
+    static final int ACK = 8;
+
+    static final int FLAG_GAME_OVER = 1;
+    static final int FLAG_HARD = 2;
+
+    long tick;
+    int birdY;
+    int birdVelocity;
+    int score;
+    int speedLevel;
+    int flags;
+    final int pipeCount;
+    final int[] pipeX;
+    final int[] pipeHeight;
+
+    // Decoder: the flap acknowledged by the last frame read, if any
+    boolean acked;
+    long ackNanos;
+
+    private int pipeHead; // Encoder: the simulation's pipeHead when last sent
+
+    WireState(int pipeCount) {
+        this.pipeCount = pipeCount;
+        pipeX = new int[pipeCount];
+        pipeHeight = new int[pipeCount];
+    }
+
+    boolean gameOver() {
+        return (flags & FLAG_GAME_OVER) != 0;
+    }
+
+    boolean hardMode() {
+        return (flags & FLAG_HARD) != 0;
+    }
+
+    double birdY() {
+        return birdY / (double) SUBPIXELS;
+    }
+
+    double birdVelocity() {
+        return birdVelocity / (double) SUBPIXELS;
+    }
+
+    private static int quantize(double value) {
+        return (int) Math.round(value * SUBPIXELS);
+    }
+
+    private static int flagsOf(FlappySimulation sim) {
+        return (sim.gameOver ? FLAG_GAME_OVER : 0) | (sim.hardMode ? FLAG_HARD : 0);
+    }
+
+    // Encoder: the whole state, after which deltas are relative to it. out
+    // needs MAX_FRAME bytes free.
+    void writeKeyframe(FlappySimulation sim, boolean ack, long ackNanos, ByteBuffer out) {
+        tick = sim.tick;
+        birdY = quantize(sim.birdY);
+        birdVelocity = quantize(sim.birdVelocity);
+        score = sim.score;
+        speedLevel = sim.speedLevel;
+        flags = flagsOf(sim);
+        pipeHead = sim.pipeHead;
+
+        int start = out.position();
+        out.put((byte) 0);
+        out.put((byte) KEYFRAME);
+        out.put((byte) (ack ? ACK : 0));
+        out.putLong(tick);
+        out.putInt(birdY);
+        out.putInt(birdVelocity);
+        putVarint(out, score);
+        out.put((byte) speedLevel);
+        out.put((byte) flags);
+        out.put((byte) pipeCount);
+        for (int i = 0; i < pipeCount; i++) {
+            int slot = sim.pipeSlot(i);
+            pipeX[i] = sim.pipeX[slot];
+            pipeHeight[i] = sim.pipeHeight[slot];
+            out.putInt(pipeX[i]);
+            out.putShort((short) pipeHeight[i]);
+        }
+        if (ack) {
+            out.putLong(ackNanos);
+        }
+        out.put(start, (byte) (out.position() - start - 1));
+    }
+
+    // Encoder: what changed since the last frame, which must have been sent
+    // the tick before, so at most one pipe was recycled in between. out needs
+    // MAX_FRAME bytes free.
+    void writeDelta(FlappySimulation sim, boolean ack, long ackNanos, ByteBuffer out) {
+        int start = out.position();
+        out.put((byte) 0);
+        out.put((byte) DELTA);
+        int fieldsAt = out.position();
+        out.put((byte) 0);
+        putVarint(out, sim.tick - tick);
+        tick = sim.tick;
+
+        int fields = 0;
+        int y = quantize(sim.birdY);
+        int velocity = quantize(sim.birdVelocity);
+        if (y != birdY || velocity != birdVelocity) {
+            fields |= BIRD;
+            putVarint(out, zigzag(y - birdY));
+            putVarint(out, zigzag(velocity - birdVelocity));
+            birdY = y;
+            birdVelocity = velocity;
+        }
+
+        int recycled = sim.pipeHead - pipeHead;
+        if (recycled < 0) recycled += pipeCount;
+        boolean moved = recycled != 0;
+        for (int i = 0; i < pipeCount && !moved; i++) {
+            moved = sim.pipeX[sim.pipeSlot(i)] != pipeX[i];
+        }
+        if (moved) {
+            fields |= PIPES;
+            out.put((byte) recycled);
+            int kept = pipeCount - recycled;
+            for (int i = 0; i < kept; i++) {
+                int x = sim.pipeX[sim.pipeSlot(i)];
+                putVarint(out, zigzag(x - pipeX[i + recycled]));
+                pipeX[i] = x;
+                pipeHeight[i] = pipeHeight[i + recycled];
+            }
+            for (int i = kept; i < pipeCount; i++) {
+                int slot = sim.pipeSlot(i);
+                putVarint(out, zigzag(sim.pipeX[slot] - pipeX[i - 1]));
+                putVarint(out, sim.pipeHeight[slot]);
+                pipeX[i] = sim.pipeX[slot];
+                pipeHeight[i] = sim.pipeHeight[slot];
+            }
+            pipeHead = sim.pipeHead;
+        }
+
+        int simFlags = flagsOf(sim);
+        if (sim.score != score || sim.speedLevel != speedLevel || simFlags != flags) {
+            fields |= STATUS;
+            putVarint(out, sim.score);
+            out.put((byte) sim.speedLevel);
+            out.put((byte) simFlags);
+            score = sim.score;
+            speedLevel = sim.speedLevel;
+            flags = simFlags;
+        }
+
+        if (ack) {
+            fields |= ACK;
+            out.putLong(ackNanos);
+        }
+        out.put(fieldsAt, (byte) fields);
+        out.put(start, (byte) (out.position() - start - 1));
+    }
+
+    // Decoder: applies the next frame if all of it has arrived. Returns false,
+    // leaving in as it was, if not.
+    boolean read(ByteBuffer in) {
+        if (!in.hasRemaining()) return false;
+        int length = in.get(in.position()) & 0xFF;
+        if (in.remaining() < 1 + length) return false;
+        int end = in.position() + 1 + length;
+        in.get();
+
+        acked = false;
+        int type = in.get();
+        if (type == KEYFRAME) {
+            int fields = in.get();
+            tick = in.getLong();
+            birdY = in.getInt();
+            birdVelocity = in.getInt();
+            score = (int) getVarint(in);
+            speedLevel = in.get();
+            flags = in.get();
+            int count = in.get();
+            if (count != pipeCount) {
+                throw new IllegalStateException("Server has " + count + " pipes, expected " + pipeCount);
+            }
+            for (int i = 0; i < pipeCount; i++) {
+                pipeX[i] = in.getInt();
+                pipeHeight[i] = in.getShort();
+            }
+            if ((fields & ACK) != 0) {
+                acked = true;
+                ackNanos = in.getLong();
+            }
+        } else if (type == DELTA) {
+            int fields = in.get();
+            tick += getVarint(in);
+            if ((fields & BIRD) != 0) {
+                birdY += unzigzag(getVarint(in));
+                birdVelocity += unzigzag(getVarint(in));
+            }
+            if ((fields & PIPES) != 0) {
+                int recycled = in.get();
+                int kept = pipeCount - recycled;
+                for (int i = 0; i < kept; i++) {
+                    pipeX[i] = pipeX[i + recycled] + unzigzag(getVarint(in));
+                    pipeHeight[i] = pipeHeight[i + recycled];
+                }
+                for (int i = kept; i < pipeCount; i++) {
+                    pipeX[i] = pipeX[i - 1] + unzigzag(getVarint(in));
+                    pipeHeight[i] = (int) getVarint(in);
+                }
+            }
+            if ((fields & STATUS) != 0) {
+                score = (int) getVarint(in);
+                speedLevel = in.get();
+                flags = in.get();
+            }
+            if ((fields & ACK) != 0) {
+                acked = true;
+                ackNanos = in.getLong();
+            }
+        } else {
+            throw new IllegalStateException("Unknown frame type " + type);
+        }
+        if (in.position() != end) {
+            throw new IllegalStateException("Frame of type " + type + " is " + length + " bytes, read "
+                + (in.position() - end + length));
+        }
+        return true;
+    }
+
+    static void writeStart(ByteBuffer out, boolean hardMode, long seed) {
+        out.put((byte) START);
+        out.put((byte) (hardMode ? FLAG_HARD : 0));
+        out.putLong(seed);
+    }
+
+    static void writeFlap(ByteBuffer out, long tick, long nanos) {
+        out.put((byte) FLAP);
+        out.putLong(tick);
+        out.putLong(nanos);
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static int unzigzag(long value) {
+        return (int) (value >>> 1 ^ -(value & 1));
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,282 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Microbenchmarks for the simulation tick, collision checks, pipe spawning and
+// full-frame rendering. Runs like a JMH harness (timed warmup and measurement
+// iterations) and reports allocation and GC activity per benchmark the way the
+// JMH gc profiler does.
+//
+//   javac -d bench/out *.java bench/FlappyBench.java
+//   java -Djava.awt.headless=true -cp bench/out FlappyBench [name-filter]
+//
+// With --alloc-budget [bytes] it instead renders frames in every mode and exits
+// non-zero if any steady-state frame allocates more than the budget.
+public class FlappyBench {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    private static final long DEFAULT_FRAME_BUDGET_BYTES = 512;
+    private static final int BUDGET_WARMUP_FRAMES = 2000;
+    private static final int BUDGET_MEASURED_FRAMES = 500;
+    private static final long SCENE_SEED = 42;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are folded in here so the JIT cannot drop the measured work
+    static long sink;
+
+    interface Op {
+        void run();
+    }
+
+    private static class Benchmark {
+        final String name;
+        final Op op;
+
+        Benchmark(String name, Op op) {
+            this.name = name;
+            this.op = op;
+        }
+    }
+
+    public static void main(String[] args) {
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        if (args.length > 0 && args[0].equals("--alloc-budget")) {
+            long budget = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_FRAME_BUDGET_BYTES;
+            System.exit(checkFrameAllocations(budget) ? 0 : 1);
+        }
+
+        String filter = args.length > 0 ? args[0] : "";
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        addSimulationBenchmarks(benchmarks);
+        addRenderBenchmarks(benchmarks);
+
+        System.out.println(String.format(Locale.ROOT, "%-34s %12s %10s %12s %12s %8s %8s",
+            "Benchmark", "ns/op", "error", "B/op", "MB/sec", "gc.count", "gc.ms"));
+        for (Benchmark benchmark : benchmarks) {
+            if (benchmark.name.contains(filter)) {
+                run(benchmark);
+            }
+        }
+    }
+
+    private static void addSimulationBenchmarks(List<Benchmark> benchmarks) {
+        for (boolean hard : new boolean[] {false, true}) {
+            FlappySimulation sim = new FlappySimulation(new Random(42));
+            sim.hardMode = hard;
+            sim.reset();
+            benchmarks.add(new Benchmark("tick" + (hard ? ".hard" : ".normal"), () -> {
+                if (sim.gameOver) {
+                    sim.reset();
+                }
+                sink += sim.step(shouldFlap(sim));
+            }));
+        }
+
+        for (int n : new int[] {1, 3, 8, 32}) {
+            FlappySimulation sim = new FlappySimulation(new Random(42));
+            Random random = new Random(7);
+            int[] xs = new int[n];
+            int[] heights = new int[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = 100 + random.nextInt(150);
+                heights[i] = 100 + random.nextInt(150);
+            }
+            benchmarks.add(new Benchmark("checkCollision.pipes" + n, () -> {
+                for (int i = 0; i < n; i++) {
+                    if (sim.checkCollision(xs[i], heights[i])) {
+                        sink++;
+                    }
+                }
+            }));
+        }
+
+        FlappySimulation spawner = new FlappySimulation(new Random(42));
+        benchmarks.add(new Benchmark("placePipe", () -> {
+            spawner.placePipe(0, FlappySimulation.WIDTH);
+            sink += spawner.pipeHeight[0];
+        }));
+    }
+
+    private static void addRenderBenchmarks(List<Benchmark> benchmarks) {
+        FlappyBird game = new FlappyBird();
+        BufferedImage frame = new BufferedImage(FlappySimulation.WIDTH, FlappySimulation.HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+
+        for (boolean night : new boolean[] {false, true}) {
+            for (boolean hard : new boolean[] {false, true}) {
+                for (int level = 1; level <= 3; level++) {
+                    final int speedLevel = level;
+                    String name = "render." + (night ? "night" : "day") + "." + (hard ? "hard" : "normal")
+                        + ".speed" + speedLevel;
+                    Graphics2D g2d = frame.createGraphics();
+                    benchmarks.add(configured(name, game, hard, night, speedLevel, () -> game.render(g2d, 0.5)));
+                }
+            }
+        }
+    }
+
+    // Puts the game into the requested mode right before the benchmark runs
+    private static Benchmark configured(String name, FlappyBird game, boolean hard, boolean night,
+                                        int speedLevel, Op op) {
+        boolean[] ready = {false};
+        return new Benchmark(name, () -> {
+            if (!ready[0]) {
+                game.setModes(hard, night);
+                FlappySimulation sim = game.simulation();
+                // Same seed every time, so a mode always renders the same pipes and clouds
+                sim.reset(SCENE_SEED);
+                game.startGame();
+                sim.speedLevel = speedLevel;
+                sim.score = speedLevel == 1 ? 0 : FlappySimulation.SPEED_THRESHOLDS[speedLevel - 2];
+                ready[0] = true;
+            }
+            op.run();
+        });
+    }
+
+    // Renders every mode frame by frame and checks each steady-state frame
+    // against the allocation budget
+    private static boolean checkFrameAllocations(long budget) {
+        FlappyBird game = new FlappyBird();
+        BufferedImage frame = new BufferedImage(FlappySimulation.WIDTH, FlappySimulation.HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = frame.createGraphics();
+        long threadId = Thread.currentThread().getId();
+        boolean withinBudget = true;
+
+        System.out.println(String.format(Locale.ROOT, "%-34s %12s %12s %8s", "Frame", "mean B", "max B", "budget"));
+        // Warm every mode up before measuring any, so late JIT compilation of a
+        // shared path does not land in the first mode's measured frames
+        for (boolean measure : new boolean[] {false, true}) {
+            for (boolean night : new boolean[] {false, true}) {
+                for (boolean hard : new boolean[] {false, true}) {
+                    for (int level = 1; level <= 3; level++) {
+                        String name = "render." + (night ? "night" : "day") + "." + (hard ? "hard" : "normal")
+                            + ".speed" + level;
+                        Op render = configured(name, game, hard, night, level, () -> game.render(g2d, 0.5)).op;
+                        if (!measure) {
+                            for (int i = 0; i < BUDGET_WARMUP_FRAMES; i++) {
+                                render.run();
+                            }
+                            continue;
+                        }
+
+                        long total = 0;
+                        long max = 0;
+                        for (int i = 0; i < BUDGET_MEASURED_FRAMES; i++) {
+                            long before = THREADS.getThreadAllocatedBytes(threadId);
+                            render.run();
+                            long allocated = THREADS.getThreadAllocatedBytes(threadId) - before;
+                            total += allocated;
+                            max = Math.max(max, allocated);
+                        }
+                        boolean ok = max <= budget;
+                        withinBudget &= ok;
+                        System.out.println(String.format(Locale.ROOT, "%-34s %12.1f %12d %8s",
+                            name, (double) total / BUDGET_MEASURED_FRAMES, max, ok ? "ok" : "OVER"));
+                    }
+                }
+            }
+        }
+        g2d.dispose();
+        return withinBudget;
+    }
+
+    // Flap when the bird drops below the middle of the next gap so runs last
+    private static boolean shouldFlap(FlappySimulation sim) {
+        for (int i = 0; i < sim.pipeCount; i++) {
+            int slot = sim.pipeSlot(i);
+            if (!sim.pipePassed[slot]) {
+                int gap = FlappySimulation.gap(sim.hardMode);
+                return sim.birdY > sim.pipeHeight[slot] + gap / 2 + 20 && sim.birdVelocity > 0;
+            }
+        }
+        return false;
+    }
+
+    private static void run(Benchmark benchmark) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(benchmark.op);
+        }
+
+        double[] nsPerOp = new double[MEASURE_ITERATIONS];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long bytesBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long[] result = iteration(benchmark.op);
+            totalBytes += THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytesBefore;
+            totalOps += result[0];
+            totalNanos += result[1];
+            nsPerOp[i] = (double) result[1] / result[0];
+        }
+
+        double mean = 0;
+        for (double v : nsPerOp) {
+            mean += v;
+        }
+        mean /= nsPerOp.length;
+        double variance = 0;
+        for (double v : nsPerOp) {
+            variance += (v - mean) * (v - mean);
+        }
+        double error = Math.sqrt(variance / (nsPerOp.length - 1));
+
+        double bytesPerOp = (double) totalBytes / totalOps;
+        double mbPerSec = totalBytes / (totalNanos / 1e9) / (1024 * 1024);
+        System.out.println(String.format(Locale.ROOT, "%-34s %12.1f %10.1f %12.1f %12.2f %8d %8d",
+            benchmark.name, mean, error, bytesPerOp, mbPerSec,
+            gcCount() - gcCountBefore, gcTime() - gcTimeBefore));
+    }
+
+    // Runs the op in batches until the iteration time is used up; returns {ops, nanos}
+    private static long[] iteration(Op op) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed = 0;
+        int batch = 1;
+        do {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                op.run();
+            }
+            ops += batch;
+            long now = System.nanoTime();
+            // Grow batches until timer overhead is negligible
+            if (now - batchStart < ITERATION_NANOS / 50) {
+                batch <<= 1;
+            }
+            elapsed = now - start;
+        } while (elapsed < ITERATION_NANOS);
+        return new long[] {ops, elapsed};
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}